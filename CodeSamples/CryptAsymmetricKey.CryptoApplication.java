@@ -0,0 +1,29 @@
+package org.jssec.android.cryptasymmetrickey;
+
+import org.jssec.android.shared.CryptoWarmUp;
+
+import android.app.Application;
+
+public class CryptoApplication extends Application {
+
+    // Algorithms used by RsaCryptoAsymmetricKey are warmed up in the background once per process, when the process starts,
+    // so that the first encryption does not wait for the providers.
+    // Set to false to compare the cold cost paid on the first tap. While true, MainActivity shows the metrics.
+    static final boolean WARM_UP_CRYPTO = true;
+    private static final CryptoWarmUp sCryptoWarmUp = new CryptoWarmUp()
+            .add(CryptoWarmUp.KEY_FACTORY, "RSA")
+            .add(CryptoWarmUp.CIPHER, "RSA/NONE/OAEPPADDING")
+            .add(CryptoWarmUp.CIPHER, "AES/GCM/NoPadding");
+
+    static CryptoWarmUp getCryptoWarmUp() {
+        return sCryptoWarmUp;
+    }
+
+    @Override
+    public void onCreate() {
+        super.onCreate();
+        if (WARM_UP_CRYPTO) {
+            sCryptoWarmUp.start();
+        }
+    }
+}
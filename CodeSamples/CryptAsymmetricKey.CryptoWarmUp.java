@@ -0,0 +1,285 @@
+package org.jssec.android.shared;
+
+import java.security.GeneralSecurityException;
+import java.security.Key;
+import java.security.KeyFactory;
+import java.security.KeyPair;
+import java.security.KeyPairGenerator;
+import java.security.Provider;
+import java.security.SecureRandom;
+import java.security.Signature;
+import java.security.spec.X509EncodedKeySpec;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import javax.crypto.Cipher;
+import javax.crypto.Mac;
+import javax.crypto.SecretKeyFactory;
+import javax.crypto.spec.GCMParameterSpec;
+import javax.crypto.spec.PBEKeySpec;
+import javax.crypto.spec.SecretKeySpec;
+
+// Runs each crypto algorithm once on a background thread with a throwaway key, so that the first operation
+// on the user's first tap does not pay for loading provider classes, looking up the services and running
+// the code of the algorithm for the first time.
+// Start it once per process, from Application.onCreate(). The time of the first (cold) and of a later (warm)
+// operation of each algorithm is recorded for comparison, and can be read by getMetrics() or by a Listener.
+// Nothing is logged. The throwaway keys are generated at random, and are never used for any real data.
+public final class CryptoWarmUp {
+    private static final String THREAD_NAME = "CryptoWarmUp";
+
+    public static final int CIPHER = 0;
+    public static final int SECRET_KEY_FACTORY = 1;
+    public static final int KEY_FACTORY = 2;
+    public static final int MAC = 3;
+    public static final int SIGNATURE = 4;
+    private static final String[] KIND_NAMES = { "Cipher", "SecretKeyFactory", "KeyFactory", "Mac", "Signature" };
+
+    // The operation is repeated this many times after the first one, and the last is recorded as the warm time.
+    private static final int WARM_UP_ROUNDS = 5;
+
+    // Throwaway keys and data. A small RSA key is enough to run the code of RSA, and is quick to generate.
+    private static final int SECRET_KEY_LENGTH_BYTES = 16;
+    private static final int KEY_PAIR_LENGTH_BITS = 1024;
+    private static final int GCM_IV_LENGTH_BYTES = 12;
+    private static final int GCM_TAG_LENGTH_BITS = 128;
+    private static final int PBE_ITERATION_COUNT = 1;
+    private static final int DATA_LENGTH_BYTES = 64;
+
+    private static final SecureRandom sRandom = new SecureRandom();
+
+    public static final class Metric {
+        private final int mKind;
+        private final String mAlgorithm;
+        private final String mProvider;
+        private final long mColdNanos;
+        private final long mWarmNanos;
+
+        Metric(int kind, String algorithm, String provider, long coldNanos, long warmNanos) {
+            mKind = kind;
+            mAlgorithm = algorithm;
+            mProvider = provider;
+            mColdNanos = coldNanos;
+            mWarmNanos = warmNanos;
+        }
+
+        public int getKind() {
+            return mKind;
+        }
+
+        public String getAlgorithm() {
+            return mAlgorithm;
+        }
+
+        // null if the algorithm is not available
+        public String getProvider() {
+            return mProvider;
+        }
+
+        public long getColdNanos() {
+            return mColdNanos;
+        }
+
+        public long getWarmNanos() {
+            return mWarmNanos;
+        }
+
+        @Override
+        public String toString() {
+            if (mProvider == null) return KIND_NAMES[mKind] + " " + mAlgorithm + ": not available";
+            return KIND_NAMES[mKind] + " " + mAlgorithm + " (" + mProvider + "): cold "
+                    + mColdNanos / 1000 + " us, warm " + mWarmNanos / 1000 + " us";
+        }
+    }
+
+    public interface Listener {
+        // Called once all the algorithms have been warmed up, on the warm-up thread
+        // (or on the thread calling setListener(), if they already have been).
+        void onFinished(List<Metric> metrics);
+    }
+
+    private final List<Integer> mKinds = new ArrayList<Integer>();
+    private final List<String> mAlgorithms = new ArrayList<String>();
+    private final List<Metric> mMetrics = Collections.synchronizedList(new ArrayList<Metric>());
+    private Thread mThread = null;
+    private boolean mFinished = false;
+    private Listener mListener = null;
+
+    public CryptoWarmUp add(final int kind, final String algorithm) {
+        mKinds.add(kind);
+        mAlgorithms.add(algorithm);
+        return this;
+    }
+
+    // Start warming up on a background thread. Only the first call has effect.
+    public synchronized void start() {
+        if (mThread != null) return;
+        final int[] kinds = new int[mKinds.size()];
+        for (int i = 0; i < kinds.length; i++) kinds[i] = mKinds.get(i);
+        final String[] algorithms = mAlgorithms.toArray(new String[mAlgorithms.size()]);
+
+        mThread = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                Map<String, KeyPair> keyPairs = new HashMap<String, KeyPair>();
+                for (int i = 0; i < kinds.length; i++) {
+                    Metric metric = warmUp(kinds[i], algorithms[i], keyPairs);
+                    mMetrics.add(metric);
+                }
+                finish();
+            }
+        }, THREAD_NAME);
+        // Do not compete with the UI thread
+        mThread.setPriority(Thread.MIN_PRIORITY);
+        mThread.setDaemon(true);
+        mThread.start();
+    }
+
+    // Metrics of the algorithms warmed up so far
+    public List<Metric> getMetrics() {
+        synchronized (mMetrics) {
+            return new ArrayList<Metric>(mMetrics);
+        }
+    }
+
+    // Set the listener to be told of the metrics, or null to remove it.
+    // An Activity must remove its listener when it is destroyed.
+    public void setListener(final Listener listener) {
+        boolean finished;
+        synchronized (this) {
+            mListener = listener;
+            finished = mFinished;
+        }
+        if (finished && listener != null) listener.onFinished(getMetrics());
+    }
+
+    private void finish() {
+        Listener listener;
+        synchronized (this) {
+            mFinished = true;
+            listener = mListener;
+        }
+        if (listener != null) listener.onFinished(getMetrics());
+    }
+
+    private static Metric warmUp(final int kind, final String algorithm, final Map<String, KeyPair> keyPairs) {
+        try {
+            // Key pairs are generated once per algorithm, before the operations are measured.
+            String keyPairAlgorithm = keyPairAlgorithm(kind, algorithm);
+            if (keyPairAlgorithm != null && !keyPairs.containsKey(keyPairAlgorithm)) {
+                KeyPairGenerator generator = KeyPairGenerator.getInstance(keyPairAlgorithm);
+                if ("RSA".equalsIgnoreCase(keyPairAlgorithm)) generator.initialize(KEY_PAIR_LENGTH_BITS);
+                keyPairs.put(keyPairAlgorithm, generator.generateKeyPair());
+            }
+
+            long start = System.nanoTime();
+            Provider provider = run(kind, algorithm, keyPairs);
+            long coldNanos = System.nanoTime() - start;
+
+            long warmNanos = 0;
+            for (int i = 0; i < WARM_UP_ROUNDS; i++) {
+                start = System.nanoTime();
+                run(kind, algorithm, keyPairs);
+                warmNanos = System.nanoTime() - start;
+            }
+            return new Metric(kind, algorithm, provider.getName(), coldNanos, warmNanos);
+        } catch (GeneralSecurityException e) {
+            return new Metric(kind, algorithm, null, 0, 0);
+        } catch (IllegalArgumentException e) {
+            return new Metric(kind, algorithm, null, 0, 0);
+        }
+    }
+
+    // Run one operation of the algorithm with a throwaway key. Return the provider of the algorithm.
+    private static Provider run(final int kind, final String algorithm, final Map<String, KeyPair> keyPairs)
+            throws GeneralSecurityException {
+        byte[] data = new byte[DATA_LENGTH_BYTES];
+        switch (kind) {
+        case CIPHER: {
+            Cipher cipher = Cipher.getInstance(algorithm);
+            String keyAlgorithm = algorithm.split("/")[0];
+            KeyPair keyPair = keyPairs.get(keyAlgorithm);
+            if (algorithm.toUpperCase().contains("/GCM/")) {
+                cipher.init(Cipher.ENCRYPT_MODE, secretKey(keyAlgorithm),
+                        new GCMParameterSpec(GCM_TAG_LENGTH_BITS, randomBytes(GCM_IV_LENGTH_BYTES)));
+            } else if (keyPair == null) {
+                cipher.init(Cipher.ENCRYPT_MODE, secretKey(keyAlgorithm));
+            } else {
+                // Private key operations are the slow ones: run both.
+                cipher.init(Cipher.ENCRYPT_MODE, keyPair.getPublic());
+                byte[] encrypted = cipher.doFinal(data);
+                cipher.init(Cipher.DECRYPT_MODE, keyPair.getPrivate());
+                cipher.doFinal(encrypted);
+                return cipher.getProvider();
+            }
+            cipher.doFinal(data);
+            return cipher.getProvider();
+        }
+        case SECRET_KEY_FACTORY: {
+            SecretKeyFactory factory = SecretKeyFactory.getInstance(algorithm);
+            PBEKeySpec spec = new PBEKeySpec(THREAD_NAME.toCharArray(), randomBytes(SECRET_KEY_LENGTH_BYTES),
+                    PBE_ITERATION_COUNT, SECRET_KEY_LENGTH_BYTES * 8);
+            factory.generateSecret(spec);
+            spec.clearPassword();
+            return factory.getProvider();
+        }
+        case KEY_FACTORY: {
+            KeyFactory factory = KeyFactory.getInstance(algorithm);
+            factory.generatePublic(new X509EncodedKeySpec(keyPairs.get(algorithm).getPublic().getEncoded()));
+            return factory.getProvider();
+        }
+        case MAC: {
+            Mac mac = Mac.getInstance(algorithm);
+            mac.init(new SecretKeySpec(randomBytes(SECRET_KEY_LENGTH_BYTES), algorithm));
+            mac.doFinal(data);
+            return mac.getProvider();
+        }
+        case SIGNATURE: {
+            Signature signature = Signature.getInstance(algorithm);
+            KeyPair keyPair = keyPairs.get(keyPairAlgorithm(kind, algorithm));
+            signature.initSign(keyPair.getPrivate());
+            signature.update(data);
+            byte[] sign = signature.sign();
+            signature.initVerify(keyPair.getPublic());
+            signature.update(data);
+            signature.verify(sign);
+            return signature.getProvider();
+        }
+        default:
+            throw new IllegalArgumentException("unknown kind: " + kind);
+        }
+    }
+
+    // Return the algorithm of the key pair used by the operation, or null if it uses a secret key.
+    private static String keyPairAlgorithm(final int kind, final String algorithm) {
+        switch (kind) {
+        case CIPHER: {
+            String keyAlgorithm = algorithm.split("/")[0];
+            return "RSA".equalsIgnoreCase(keyAlgorithm) ? keyAlgorithm : null;
+        }
+        case KEY_FACTORY:
+            return algorithm;
+        case SIGNATURE: {
+            // "SHA256withRSA" -> "RSA", "SHA256withECDSA" -> "EC", "Ed25519" -> "Ed25519"
+            int with = algorithm.toUpperCase().indexOf("WITH");
+            String keyAlgorithm = (with < 0) ? algorithm : algorithm.substring(with + 4);
+            return "ECDSA".equalsIgnoreCase(keyAlgorithm) ? "EC" : keyAlgorithm;
+        }
+        default:
+            return null;
+        }
+    }
+
+    private static Key secretKey(final String keyAlgorithm) {
+        return new SecretKeySpec(randomBytes(SECRET_KEY_LENGTH_BYTES), keyAlgorithm);
+    }
+
+    private static byte[] randomBytes(final int length) {
+        byte[] bytes = new byte[length];
+        sRandom.nextBytes(bytes);
+        return bytes;
+    }
+}
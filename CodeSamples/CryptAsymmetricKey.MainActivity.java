@@ -5,6 +5,9 @@ import java.io.FileNotFoundException;
 import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.util.List;
+
+import org.jssec.android.shared.CryptoWarmUp;
 
 import android.os.Bundle;
 import android.app.Activity;
@@ -21,6 +24,35 @@ public class MainActivity extends Activity {
     protected void onCreate(Bundle savedInstanceState) {
         super.onCreate(savedInstanceState);
         setContentView(R.layout.activity_main);
+
+        if (CryptoApplication.WARM_UP_CRYPTO) {
+            // Show the time taken by the first (cold) and by a later (warm) operation of each algorithm
+            final TextView textViewWarmUp = (TextView) findViewById(R.id.textViewWarmUp);
+            textViewWarmUp.setVisibility(View.VISIBLE);
+            CryptoApplication.getCryptoWarmUp().setListener(new CryptoWarmUp.Listener() {
+                @Override
+                public void onFinished(final List<CryptoWarmUp.Metric> metrics) {
+                    runOnUiThread(new Runnable() {
+                        @Override
+                        public void run() {
+                            StringBuilder text = new StringBuilder();
+                            for (CryptoWarmUp.Metric metric : metrics) {
+                                text.append(metric).append('\n');
+                            }
+                            textViewWarmUp.setText(text);
+                        }
+                    });
+                }
+            });
+        }
+    }
+
+    @Override
+    protected void onDestroy() {
+        if (CryptoApplication.WARM_UP_CRYPTO) {
+            CryptoApplication.getCryptoWarmUp().setListener(null);
+        }
+        super.onDestroy();
     }
 
     @Override
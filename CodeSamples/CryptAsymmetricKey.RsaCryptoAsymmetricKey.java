@@ -1,19 +1,31 @@
 package org.jssec.android.cryptasymmetrickey;
 
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.security.InvalidAlgorithmParameterException;
 import java.security.InvalidKeyException;
 import java.security.KeyFactory;
 import java.security.NoSuchAlgorithmException;
 import java.security.PrivateKey;
 import java.security.PublicKey;
+import java.security.SecureRandom;
+import java.security.interfaces.RSAKey;
 import java.security.interfaces.RSAPublicKey;
 import java.security.spec.InvalidKeySpecException;
 import java.security.spec.PKCS8EncodedKeySpec;
 import java.security.spec.X509EncodedKeySpec;
+import java.util.Arrays;
 
 import javax.crypto.BadPaddingException;
 import javax.crypto.Cipher;
 import javax.crypto.IllegalBlockSizeException;
 import javax.crypto.NoSuchPaddingException;
+import javax.crypto.ShortBufferException;
+import javax.crypto.spec.GCMParameterSpec;
+import javax.crypto.spec.SecretKeySpec;
 
 public final class RsaCryptoAsymmetricKey {
 
@@ -30,6 +42,33 @@ public final class RsaCryptoAsymmetricKey {
     // Check the length of the key
     private static final int MIN_KEY_LENGTH = 2000;
 
+    // Envelope encryption: the data is encrypted by a random AES key, and only the AES key is encrypted by RSA.
+    // Format: version (1) | length of the encrypted AES key (2, big endian) | encrypted AES key | IV (12)
+    //         | encrypted data followed by the tag (16)
+    // Everything before the IV is authenticated as associated data of AES-GCM.
+    // The length of the encrypted AES key is always the length of the RSA modulus.
+    private static final String ENVELOPE_TRANSFORMATION = "AES/GCM/NoPadding";
+    private static final String ENVELOPE_KEY_ALGORITHM = "AES";
+    private static final byte ENVELOPE_VERSION = 1;
+    private static final int ENVELOPE_KEY_LENGTH_BYTES = 16;
+    private static final int ENVELOPE_IV_LENGTH_BYTES = 12;
+    private static final int ENVELOPE_TAG_LENGTH_BYTES = 16;
+    // Size of the chunks in which streamed data is encrypted/decrypted
+    private static final int ENVELOPE_BUFFER_BYTES = 16 * 1024;
+
+    private static final SecureRandom sRandom = new SecureRandom();
+
+    // Parsed public keys are kept for reuse. Only keys which have passed the key length check are kept.
+    // Private keys are never kept: they are parsed on every call and left to the caller.
+    private static final int MAX_CACHED_KEYS = 8;
+    private static final ParsedKeyCache<PublicKey> sPublicKeys = new ParsedKeyCache<PublicKey>(MAX_CACHED_KEYS);
+
+    // Cipher and KeyFactory are not thread-safe, and getInstance() looks up the provider on every call,
+    // so each thread keeps its own instances and reuses them.
+    private static final ThreadLocal<Cipher> sCipher = new ThreadLocal<Cipher>();
+    private static final ThreadLocal<KeyFactory> sKeyFactory = new ThreadLocal<KeyFactory>();
+    private static final ThreadLocal<Cipher> sEnvelopeCipher = new ThreadLocal<Cipher>();
+
     RsaCryptoAsymmetricKey() {
     }
 
@@ -39,7 +78,7 @@ public final class RsaCryptoAsymmetricKey {
         try {
             // *** POINT 1 *** Explicitly specify the encryption mode and the padding.
             // *** POINT 2 *** Use strong encryption methods (specifically, technologies that meet the relevant criteria), including algorithms, block cipher modes, and padding modes..
-            Cipher cipher = Cipher.getInstance(TRANSFORMATION);
+            Cipher cipher = getCipher();
 
             PublicKey publicKey = generatePubKey(keyData);
             if (publicKey != null) {
@@ -67,29 +106,270 @@ public final class RsaCryptoAsymmetricKey {
         try {
             // *** POINT 1 *** Explicitly specify the encryption mode and the padding.
             // *** POINT 2 *** Use strong encryption methods (specifically, technologies that meet the relevant criteria), including algorithms, block cipher modes, and padding modes..
-            Cipher cipher = Cipher.getInstance(TRANSFORMATION);
+            Cipher cipher = getCipher();
+
+            PrivateKey privateKey = generatePriKey(keyData);
+            if (privateKey != null) {
+                cipher.init(Cipher.DECRYPT_MODE, privateKey);
+
+                plain = cipher.doFinal(encrypted);
+            }
+        } catch (NoSuchAlgorithmException e) {
+        } catch (NoSuchPaddingException e) {
+        } catch (InvalidKeyException e) {
+        } catch (IllegalBlockSizeException e) {
+        } catch (BadPaddingException e) {
+        } finally {
+        }
+
+        return plain;
+    }
+
+    // Encrypt plain of any size with one RSA operation. Return the envelope, or null on failure.
+    public final byte[] encryptEnvelope(final byte[] plain, final byte[] keyData) {
+        byte[] envelope = null;
+        byte[] rawKey = new byte[ENVELOPE_KEY_LENGTH_BYTES];
+
+        try {
+            Cipher cipher = getCipher();
+            Cipher envelopeCipher = getEnvelopeCipher();
+
+            PublicKey publicKey = generatePubKey(keyData);
+            if (publicKey != null) {
+                byte[] header = initEnvelope(cipher, envelopeCipher, publicKey, rawKey);
+                envelope = Arrays.copyOf(header, header.length + envelopeCipher.getOutputSize(plain.length));
+                envelopeCipher.doFinal(plain, 0, plain.length, envelope, header.length);
+            }
+        } catch (NoSuchAlgorithmException e) {
+        } catch (NoSuchPaddingException e) {
+        } catch (InvalidKeyException e) {
+        } catch (InvalidAlgorithmParameterException e) {
+        } catch (ShortBufferException e) {
+        } catch (IllegalBlockSizeException e) {
+        } catch (BadPaddingException e) {
+        } finally {
+            Arrays.fill(rawKey, (byte) 0);
+        }
+
+        return envelope;
+    }
+
+    // Decrypt an envelope made by encryptEnvelope. Return null if it has been tampered with, or on other failures.
+    public final byte[] decryptEnvelope(final byte[] envelope, final byte[] keyData) {
+        // As with decrypt(), private keys should not be retained within the application in real-world applications.
+        byte[] plain = null;
+        byte[] rawKey = null;
+
+        try {
+            Cipher cipher = getCipher();
+            Cipher envelopeCipher = getEnvelopeCipher();
+
+            ByteBuffer in = ByteBuffer.wrap(envelope);
+            if (in.remaining() < 1 + 2 || in.get() != ENVELOPE_VERSION) return null;
+            int wrappedKeyLength = in.getShort() & 0xFFFF;
+            if (in.remaining() < wrappedKeyLength + ENVELOPE_IV_LENGTH_BYTES + ENVELOPE_TAG_LENGTH_BYTES) return null;
+            int headerLength = in.position() + wrappedKeyLength;
 
             PrivateKey privateKey = generatePriKey(keyData);
-            cipher.init(Cipher.DECRYPT_MODE, privateKey);
+            if (privateKey == null) return null;
+            rawKey = unwrapKey(cipher, privateKey, envelope, in.position(), wrappedKeyLength);
+            if (rawKey == null) return null;
 
-            plain = cipher.doFinal(encrypted);
+            envelopeCipher.init(Cipher.DECRYPT_MODE, new SecretKeySpec(rawKey, ENVELOPE_KEY_ALGORITHM),
+                    new GCMParameterSpec(ENVELOPE_TAG_LENGTH_BYTES * 8, envelope, headerLength, ENVELOPE_IV_LENGTH_BYTES));
+            envelopeCipher.updateAAD(envelope, 0, headerLength);
+            int bodyOffset = headerLength + ENVELOPE_IV_LENGTH_BYTES;
+            plain = envelopeCipher.doFinal(envelope, bodyOffset, envelope.length - bodyOffset);
         } catch (NoSuchAlgorithmException e) {
         } catch (NoSuchPaddingException e) {
         } catch (InvalidKeyException e) {
+        } catch (InvalidAlgorithmParameterException e) {
         } catch (IllegalBlockSizeException e) {
         } catch (BadPaddingException e) {
         } finally {
+            if (rawKey != null) Arrays.fill(rawKey, (byte) 0);
         }
 
         return plain;
     }
 
+    // Encrypt the data read from plain until its end, and write the envelope to out.
+    // The envelope is the same as that of encryptEnvelope(byte[], byte[]); the data is never held in memory as a whole.
+    // Return false on failure. The streams are not closed.
+    public final boolean encryptEnvelope(final InputStream plain, final OutputStream out, final byte[] keyData) {
+        boolean done = false;
+        byte[] rawKey = new byte[ENVELOPE_KEY_LENGTH_BYTES];
+
+        try {
+            Cipher cipher = getCipher();
+            Cipher envelopeCipher = getEnvelopeCipher();
+
+            PublicKey publicKey = generatePubKey(keyData);
+            if (publicKey != null) {
+                out.write(initEnvelope(cipher, envelopeCipher, publicKey, rawKey));
+                byte[] buffer = new byte[ENVELOPE_BUFFER_BYTES];
+                int read;
+                while ((read = plain.read(buffer)) != -1) {
+                    byte[] encrypted = envelopeCipher.update(buffer, 0, read);
+                    if (encrypted != null) out.write(encrypted);
+                }
+                out.write(envelopeCipher.doFinal());
+                done = true;
+            }
+        } catch (IOException e) {
+        } catch (NoSuchAlgorithmException e) {
+        } catch (NoSuchPaddingException e) {
+        } catch (InvalidKeyException e) {
+        } catch (InvalidAlgorithmParameterException e) {
+        } catch (IllegalBlockSizeException e) {
+        } catch (BadPaddingException e) {
+        } finally {
+            Arrays.fill(rawKey, (byte) 0);
+        }
+
+        return done;
+    }
+
+    // Decrypt an envelope read from envelope until its end, and write the plain data to out.
+    // Return false if the envelope has been tampered with, or on other failures.
+    // The tag is checked only at the end of the envelope, so everything written to out must be discarded
+    // if false is returned. The streams are not closed.
+    public final boolean decryptEnvelope(final InputStream envelope, final OutputStream out, final byte[] keyData) {
+        // As with decrypt(), private keys should not be retained within the application in real-world applications.
+        boolean done = false;
+        byte[] rawKey = null;
+
+        try {
+            Cipher cipher = getCipher();
+            Cipher envelopeCipher = getEnvelopeCipher();
+
+            DataInputStream in = new DataInputStream(envelope);
+            if (in.readByte() != ENVELOPE_VERSION) return false;
+            int wrappedKeyLength = in.readUnsignedShort();
+            PrivateKey privateKey = generatePriKey(keyData);
+            if (privateKey == null || wrappedKeyLength != modulusLength(privateKey)) return false;
+            byte[] header = new byte[1 + 2 + wrappedKeyLength];
+            ByteBuffer.wrap(header).put(ENVELOPE_VERSION).putShort((short) wrappedKeyLength);
+            in.readFully(header, 1 + 2, wrappedKeyLength);
+            byte[] iv = new byte[ENVELOPE_IV_LENGTH_BYTES];
+            in.readFully(iv);
+
+            rawKey = unwrapKey(cipher, privateKey, header, 1 + 2, wrappedKeyLength);
+            if (rawKey == null) return false;
+            envelopeCipher.init(Cipher.DECRYPT_MODE, new SecretKeySpec(rawKey, ENVELOPE_KEY_ALGORITHM),
+                    new GCMParameterSpec(ENVELOPE_TAG_LENGTH_BYTES * 8, iv));
+            envelopeCipher.updateAAD(header);
+
+            byte[] buffer = new byte[ENVELOPE_BUFFER_BYTES];
+            int read;
+            while ((read = in.read(buffer)) != -1) {
+                byte[] plain = envelopeCipher.update(buffer, 0, read);
+                if (plain != null) out.write(plain);
+            }
+            out.write(envelopeCipher.doFinal());
+            done = true;
+        } catch (IOException e) {
+        } catch (NoSuchAlgorithmException e) {
+        } catch (NoSuchPaddingException e) {
+        } catch (InvalidKeyException e) {
+        } catch (InvalidAlgorithmParameterException e) {
+        } catch (IllegalBlockSizeException e) {
+        } catch (BadPaddingException e) {
+        } finally {
+            if (rawKey != null) Arrays.fill(rawKey, (byte) 0);
+        }
+
+        return done;
+    }
+
+    // Generate a random AES key into rawKey, and initialize envelopeCipher with it.
+    // Return the envelope header (version, encrypted AES key) followed by the IV.
+    private static final byte[] initEnvelope(final Cipher cipher, final Cipher envelopeCipher,
+            final PublicKey publicKey, final byte[] rawKey)
+            throws InvalidKeyException, InvalidAlgorithmParameterException, IllegalBlockSizeException, BadPaddingException {
+        sRandom.nextBytes(rawKey);
+        cipher.init(Cipher.ENCRYPT_MODE, publicKey);
+        byte[] wrappedKey = cipher.doFinal(rawKey);
+
+        byte[] iv = new byte[ENVELOPE_IV_LENGTH_BYTES];
+        sRandom.nextBytes(iv);
+        envelopeCipher.init(Cipher.ENCRYPT_MODE, new SecretKeySpec(rawKey, ENVELOPE_KEY_ALGORITHM),
+                new GCMParameterSpec(ENVELOPE_TAG_LENGTH_BYTES * 8, iv));
+
+        int headerLength = 1 + 2 + wrappedKey.length;
+        ByteBuffer header = ByteBuffer.allocate(headerLength + iv.length);
+        header.put(ENVELOPE_VERSION);
+        header.putShort((short) wrappedKey.length);
+        header.put(wrappedKey);
+        envelopeCipher.updateAAD(header.array(), 0, headerLength);
+        header.put(iv);
+        return header.array();
+    }
+
+    // Return the AES key encrypted in data[offset, offset + length), or null if it is not a valid one.
+    private static final byte[] unwrapKey(final Cipher cipher, final PrivateKey privateKey,
+            final byte[] data, final int offset, final int length)
+            throws InvalidKeyException, IllegalBlockSizeException, BadPaddingException {
+        // An encrypted AES key of any other length has been tampered with: it is rejected before RSA is run on it.
+        if (length != modulusLength(privateKey)) return null;
+
+        byte[] rawKey;
+        cipher.init(Cipher.DECRYPT_MODE, privateKey);
+        try {
+            rawKey = cipher.doFinal(data, offset, length);
+        } catch (RuntimeException e) {
+            // Some providers report a malformed RSA block by an unchecked exception.
+            return null;
+        }
+        if (rawKey.length != ENVELOPE_KEY_LENGTH_BYTES) {
+            Arrays.fill(rawKey, (byte) 0);
+            return null;
+        }
+        return rawKey;
+    }
+
+    // Return the length of the RSA modulus of key in bytes, or -1 if it is not an RSA key.
+    private static final int modulusLength(final PrivateKey key) {
+        if (!(key instanceof RSAKey)) return -1;
+        return (((RSAKey) key).getModulus().bitLength() + 7) / 8;
+    }
+
+    private static final Cipher getCipher() throws NoSuchAlgorithmException, NoSuchPaddingException {
+        Cipher cipher = sCipher.get();
+        if (cipher == null) {
+            cipher = Cipher.getInstance(TRANSFORMATION);
+            sCipher.set(cipher);
+        }
+        return cipher;
+    }
+
+    private static final Cipher getEnvelopeCipher() throws NoSuchAlgorithmException, NoSuchPaddingException {
+        Cipher cipher = sEnvelopeCipher.get();
+        if (cipher == null) {
+            cipher = Cipher.getInstance(ENVELOPE_TRANSFORMATION);
+            sEnvelopeCipher.set(cipher);
+        }
+        return cipher;
+    }
+
+    private static final KeyFactory getKeyFactory() throws NoSuchAlgorithmException {
+        KeyFactory keyFactory = sKeyFactory.get();
+        if (keyFactory == null) {
+            keyFactory = KeyFactory.getInstance(KEY_ALGORITHM);
+            sKeyFactory.set(keyFactory);
+        }
+        return keyFactory;
+    }
+
     private static final PublicKey generatePubKey(final byte[] keyData) {
-        PublicKey publicKey = null;
+        ByteBuffer id = ParsedKeyCache.id(keyData);
+        PublicKey publicKey = sPublicKeys.get(id);
+        if (publicKey != null) return publicKey;
+
         KeyFactory keyFactory = null;
 
         try {
-            keyFactory = KeyFactory.getInstance(KEY_ALGORITHM);
+            keyFactory = getKeyFactory();
             publicKey = keyFactory.generatePublic(new X509EncodedKeySpec(keyData));
         } catch (IllegalArgumentException e) {
         } catch (NoSuchAlgorithmException e) {
@@ -106,6 +386,7 @@ public final class RsaCryptoAsymmetricKey {
             }
         }
 
+        sPublicKeys.put(id, publicKey);
         return publicKey;
     }
 
@@ -114,7 +395,7 @@ public final class RsaCryptoAsymmetricKey {
         KeyFactory keyFactory = null;
 
         try {
-            keyFactory = KeyFactory.getInstance(KEY_ALGORITHM);
+            keyFactory = getKeyFactory();
             privateKey = keyFactory.generatePrivate(new PKCS8EncodedKeySpec(keyData));
         } catch (IllegalArgumentException e) {
         } catch (NoSuchAlgorithmException e) {
@@ -122,6 +403,15 @@ public final class RsaCryptoAsymmetricKey {
         } finally {
         }
 
+        // *** POINT 3 *** Use a key of length sufficient to guarantee the strength of encryption.
+        // Check the length of the key
+        if (privateKey instanceof RSAKey) {
+            int len = ((RSAKey) privateKey).getModulus().bitLength();
+            if (len < MIN_KEY_LENGTH) {
+                privateKey = null;
+            }
+        }
+
         return privateKey;
     }
 }
@@ -1,9 +1,11 @@
 package org.jssec.android.cryptsymmetricpasswordbasedkey;
 
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
 import java.security.InvalidAlgorithmParameterException;
 import java.security.InvalidKeyException;
 import java.security.NoSuchAlgorithmException;
-import java.security.SecureRandom;
 import java.security.spec.InvalidKeySpecException;
 import java.util.Arrays;
 
@@ -13,9 +15,14 @@ import javax.crypto.IllegalBlockSizeException;
 import javax.crypto.NoSuchPaddingException;
 import javax.crypto.SecretKey;
 import javax.crypto.SecretKeyFactory;
+import javax.crypto.ShortBufferException;
 import javax.crypto.spec.IvParameterSpec;
 import javax.crypto.spec.PBEKeySpec;
 
+import org.jssec.android.shared.RandomBytes;
+
+import android.content.Context;
+
 public final class AesCryptoPBEKey {
 
     // *** POINT 1 *** Explicitly specify the encryption mode and the padding.
@@ -33,14 +40,33 @@ public final class AesCryptoPBEKey {
 
     // *** POINT 4 *** When generating a key from a password, specify an appropriate hash iteration count.
     // Set the number of mixing repetitions used when generating keys via PBE
+    // This is the minimum. calibrateIterationCount() gives a higher count which fits the speed of the device,
+    // and the count used for encryption is to be stored with the data.
     private static final int KEY_GEN_ITERATION_COUNT = 1024;
+    // Upper limit of the count, so that a tampered count does not make the key derivation run for minutes
+    private static final int MAX_KEY_GEN_ITERATION_COUNT = 10 * 1000 * 1000;
 
     // *** POINT 5 *** Use a key of length sufficient to guarantee the strength of encryption.
     // Key length in bits
     private static final int KEY_LENGTH_BITS = 128;
 
+    // Size of the chunks in which streams are encrypted/decrypted.
+    // Memory used by the stream versions does not depend on the size of the data.
+    private static final int STREAM_CHUNK_BYTES = 64 * 1024;
+
     private byte[] mIV = null;
+    // Derived keys kept between operations. null unless enabled by enableKeyCache().
+    private static volatile DerivedKeyCache sKeyCache = null;
+
+    private static final DerivedKeyCache.Deriver sDeriver = new DerivedKeyCache.Deriver() {
+        @Override
+        public SecretKey derive(char[] password, byte[] salt, int iterationCount) {
+            return deriveKey(password, salt, iterationCount);
+        }
+    };
+
     private byte[] mSalt = null;
+    private int mIterationCount = KEY_GEN_ITERATION_COUNT;
 
     public byte[] getIV() {
         return mIV;
@@ -50,6 +76,29 @@ public final class AesCryptoPBEKey {
         return mSalt;
     }
 
+    public int getIterationCount() {
+        return mIterationCount;
+    }
+
+    // Return the highest iteration count with which a key derivation takes about budgetMillis on this device.
+    // Measured on the first call and kept in a private preference file. The first call takes time: call it off the UI thread.
+    public static int calibrateIterationCount(final Context context, final long budgetMillis) {
+        return IterationCountCalibrator.get(context, KEY_GENERATOR_MODE, budgetMillis,
+                KEY_GEN_ITERATION_COUNT, MAX_KEY_GEN_ITERATION_COUNT, sDeriver);
+    }
+
+    // Keep derived keys for ttlMillis so that repeated operations with the same password and salt
+    // (e.g. reading many records after one unlock) skip the key derivation.
+    // Keys are cleared when the application goes to the background. Disabled by default.
+    public static synchronized void enableKeyCache(final Context context, final long ttlMillis, final int maxEntries) {
+        if (sKeyCache == null) sKeyCache = new DerivedKeyCache(context, ttlMillis, maxEntries);
+    }
+
+    public static synchronized void disableKeyCache() {
+        if (sKeyCache != null) sKeyCache.close();
+        sKeyCache = null;
+    }
+
     AesCryptoPBEKey(final byte[] iv, final byte[] salt) {
         mIV = iv;
         mSalt = salt;
@@ -60,10 +109,23 @@ public final class AesCryptoPBEKey {
         initSalt();
     }
 
+    // For encryption with iterationCount (e.g. by calibrateIterationCount())
+    AesCryptoPBEKey(final int iterationCount) {
+        mIV = null;
+        mIterationCount = iterationCount;
+        initSalt();
+    }
+
+    // For decryption with the iteration count stored with the data
+    AesCryptoPBEKey(final byte[] iv, final byte[] salt, final int iterationCount) {
+        mIV = iv;
+        mSalt = salt;
+        mIterationCount = iterationCount;
+    }
+
     private void initSalt() {
         mSalt = new byte[SALT_LENGTH_BYTES];
-        SecureRandom sr = new SecureRandom();
-        sr.nextBytes(mSalt);
+        RandomBytes.nextBytes(mSalt);
     }
 
     public final byte[] encrypt(final byte[] plain, final char[] password) {
@@ -75,7 +137,7 @@ public final class AesCryptoPBEKey {
             Cipher cipher = Cipher.getInstance(TRANSFORMATION);
 
             // *** POINT 3 *** When generating keys from passwords, use Salt.
-            SecretKey secretKey = generateKey(password, mSalt);
+            SecretKey secretKey = generateKey(password, mSalt, mIterationCount);
             cipher.init(Cipher.ENCRYPT_MODE, secretKey);
             mIV = cipher.getIV();
 
@@ -100,7 +162,7 @@ public final class AesCryptoPBEKey {
             Cipher cipher = Cipher.getInstance(TRANSFORMATION);
 
             // *** POINT 3 *** When generating a key from a password, use Salt.
-            SecretKey secretKey = generateKey(password, mSalt);
+            SecretKey secretKey = generateKey(password, mSalt, mIterationCount);
             IvParameterSpec ivParameterSpec = new IvParameterSpec(mIV);
             cipher.init(Cipher.DECRYPT_MODE, secretKey, ivParameterSpec);
 
@@ -117,7 +179,104 @@ public final class AesCryptoPBEKey {
         return plain;
     }
 
-    private static final SecretKey generateKey(final char[] password, final byte[] salt) {
+    // Encrypt in and write the result to out. The result is the same as that of encrypt(byte[], char[]).
+    // The IV is available by getIV() after this method returns.
+    public final boolean encrypt(final InputStream in, final OutputStream out, final char[] password) {
+        boolean ret = false;
+
+        try {
+            // *** POINT 1 *** Explicitly specify the encryption mode and the padding.
+            // *** POINT 2 *** Use strong encryption technologies (specifically, technologies that meet the relevant criteria), including algorithms, modes, and padding.
+            Cipher cipher = Cipher.getInstance(TRANSFORMATION);
+
+            // *** POINT 3 *** When generating keys from passwords, use Salt.
+            SecretKey secretKey = generateKey(password, mSalt, mIterationCount);
+            cipher.init(Cipher.ENCRYPT_MODE, secretKey);
+            mIV = cipher.getIV();
+
+            ret = transform(cipher, in, out);
+        } catch (NoSuchAlgorithmException e) {
+        } catch (NoSuchPaddingException e) {
+        } catch (InvalidKeyException e) {
+        } catch (ShortBufferException e) {
+        } catch (IllegalBlockSizeException e) {
+        } catch (BadPaddingException e) {
+        } catch (IOException e) {
+        } finally {
+        }
+
+        return ret;
+    }
+
+    // Decrypt in and write the result to out.
+    // If false is returned, data already written to out must be discarded.
+    public final boolean decrypt(final InputStream in, final OutputStream out, final char[] password) {
+        boolean ret = false;
+
+        try {
+            // *** POINT 1 *** Explicitly specify the encryption mode and the padding.
+            // *** POINT 2 *** Use strong encryption technologies (specifically, technologies that meet the relevant criteria), including algorithms, block cipher modes, and padding modes.
+            Cipher cipher = Cipher.getInstance(TRANSFORMATION);
+
+            // *** POINT 3 *** When generating a key from a password, use Salt.
+            SecretKey secretKey = generateKey(password, mSalt, mIterationCount);
+            IvParameterSpec ivParameterSpec = new IvParameterSpec(mIV);
+            cipher.init(Cipher.DECRYPT_MODE, secretKey, ivParameterSpec);
+
+            ret = transform(cipher, in, out);
+        } catch (NoSuchAlgorithmException e) {
+        } catch (NoSuchPaddingException e) {
+        } catch (InvalidKeyException e) {
+        } catch (InvalidAlgorithmParameterException e) {
+        } catch (ShortBufferException e) {
+        } catch (IllegalBlockSizeException e) {
+        } catch (BadPaddingException e) {
+        } catch (IOException e) {
+        } finally {
+        }
+
+        return ret;
+    }
+
+    private static final boolean transform(final Cipher cipher, final InputStream in, final OutputStream out)
+            throws IOException, ShortBufferException, IllegalBlockSizeException, BadPaddingException {
+        byte[] inBuf = new byte[STREAM_CHUNK_BYTES];
+        // Room for one chunk, plus a block held back by the cipher and a block of padding.
+        byte[] outBuf = new byte[STREAM_CHUNK_BYTES + 2 * cipher.getBlockSize()];
+
+        int n;
+        while ((n = in.read(inBuf)) != -1) {
+            int m = cipher.update(inBuf, 0, n, outBuf, 0);
+            out.write(outBuf, 0, m);
+        }
+        int m = cipher.doFinal(outBuf, 0);
+        out.write(outBuf, 0, m);
+        out.flush();
+
+        return true;
+    }
+
+    // Key material derived from password, for formats which use the key with other transformations (e.g. EncryptedRecordFile).
+    // password is cleared. Return null on failure. The caller clears the returned bytes after use.
+    static final byte[] generateKeyBytes(final char[] password, final byte[] salt, final int iterationCount) {
+        SecretKey secretKey = generateKey(password, salt, iterationCount);
+        return (secretKey != null) ? secretKey.getEncoded() : null;
+    }
+
+    private static final SecretKey generateKey(final char[] password, final byte[] salt, final int iterationCount) {
+        DerivedKeyCache keyCache = sKeyCache;
+        if (keyCache == null) return deriveKey(password, salt, iterationCount);
+        return keyCache.get(password, salt, iterationCount, sDeriver);
+    }
+
+    private static final SecretKey deriveKey(final char[] password, final byte[] salt, final int iterationCount) {
+        // *** POINT 4 *** When generating a key from a password, specify an appropriate hash iteration count.
+        if (iterationCount < KEY_GEN_ITERATION_COUNT || iterationCount > MAX_KEY_GEN_ITERATION_COUNT) {
+            // Clear password
+            Arrays.fill(password, '?');
+            return null;
+        }
+
         SecretKey secretKey = null;
         PBEKeySpec keySpec = null;
 
@@ -130,7 +289,7 @@ public final class AesCryptoPBEKey {
             // *** POINT 3 *** When generating a key from a password, use Salt.
             // *** POINT 4 *** When generating a key from a password, specify an appropriate hash iteration count.
             // *** POINT 5 *** Use a key of length sufficient to guarantee the strength of encryption.
-            keySpec = new PBEKeySpec(password, salt, KEY_GEN_ITERATION_COUNT, KEY_LENGTH_BITS);
+            keySpec = new PBEKeySpec(password, salt, iterationCount, KEY_LENGTH_BITS);
             // Clear password
             Arrays.fill(password, '?');
             // Generate the key
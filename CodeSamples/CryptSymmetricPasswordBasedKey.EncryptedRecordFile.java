@@ -0,0 +1,224 @@
+package org.jssec.android.cryptsymmetricpasswordbasedkey;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.security.InvalidAlgorithmParameterException;
+import java.security.InvalidKeyException;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.List;
+
+import javax.crypto.BadPaddingException;
+import javax.crypto.Cipher;
+import javax.crypto.IllegalBlockSizeException;
+import javax.crypto.NoSuchPaddingException;
+import javax.crypto.ShortBufferException;
+import javax.crypto.spec.GCMParameterSpec;
+import javax.crypto.spec.SecretKeySpec;
+
+import org.jssec.android.shared.RandomBytes;
+
+// File of records encrypted by a key derived from a password.
+// Each record is encrypted and authenticated independently, so one record can be read
+// without reading or decrypting the others.
+//
+// Format (all integers are big endian):
+//   header (36 bytes): magic "JSEF" (4) | version (1) | reserved (3) | iteration count (4) | salt (20) | record count (4)
+//   index: for each record, offset in the file (8) | length (4) | IV (12)
+//   records: encrypted record followed by its tag (16)
+// The header and the number of the record are authenticated with each record,
+// so records can neither be swapped, nor moved to another file, nor read with a modified header.
+public final class EncryptedRecordFile {
+
+    // *** POINT 1 *** Explicitly specify the encryption mode and the padding.
+    // *** POINT 2 *** Use strong encryption technologies (specifically, technologies that meet the relevant criteria), including algorithms, modes, and padding.
+    private static final String TRANSFORMATION = "AES/GCM/NoPadding";
+
+    // Encryption algorithm
+    private static final String KEY_ALGORITHM = "AES";
+
+    private static final byte[] MAGIC = { 'J', 'S', 'E', 'F' };
+    private static final byte VERSION = 2;
+    public static final int HEADER_BYTES = 4 + 1 + 3 + 4 + AesCryptoPBEKey.SALT_LENGTH_BYTES + 4;
+    private static final int IV_LENGTH_BYTES = 12;
+    private static final int INDEX_ENTRY_BYTES = 8 + 4 + IV_LENGTH_BYTES;
+    private static final int TAG_LENGTH_BYTES = 16;
+
+    private final MappedByteBuffer mMap;
+    private final byte[] mHeader;
+    private final int mRecordCount;
+    private final byte[] mKey;
+
+    private EncryptedRecordFile(final MappedByteBuffer map, final byte[] header, final int recordCount, final byte[] key) {
+        mMap = map;
+        mHeader = header;
+        mRecordCount = recordCount;
+        mKey = key;
+    }
+
+    // Return true if the file in channel begins with the magic of this format.
+    public static boolean isRecordFile(final FileChannel channel) throws IOException {
+        ByteBuffer magic = ByteBuffer.allocate(MAGIC.length);
+        channel.read(magic, 0);
+        return Arrays.equals(magic.array(), MAGIC);
+    }
+
+    // Write records to channel, encrypted by the key derived from password with iterationCount.
+    // password is cleared. Return false on failure.
+    public static boolean write(final FileChannel channel, final List<byte[]> records,
+                                final char[] password, final int iterationCount) throws IOException {
+        byte[] salt = RandomBytes.nextBytes(AesCryptoPBEKey.SALT_LENGTH_BYTES);
+
+        ByteBuffer header = ByteBuffer.allocate(HEADER_BYTES);
+        header.put(MAGIC);
+        header.put(VERSION);
+        header.put(new byte[3]);
+        header.putInt(iterationCount);
+        header.put(salt);
+        header.putInt(records.size());
+
+        // *** POINT 3 *** When generating keys from passwords, use Salt.
+        byte[] key = AesCryptoPBEKey.generateKeyBytes(password, salt, iterationCount);
+        if (key == null) return false;
+
+        try {
+            Cipher cipher = Cipher.getInstance(TRANSFORMATION);
+            SecretKeySpec secretKey = new SecretKeySpec(key, KEY_ALGORITHM);
+
+            // IVs of all the records are generated at once.
+            ByteBuffer ivs = ByteBuffer.allocate(records.size() * IV_LENGTH_BYTES);
+            RandomBytes.nextBytes(ivs);
+            ivs.flip();
+
+            ByteBuffer index = ByteBuffer.allocate(records.size() * INDEX_ENTRY_BYTES);
+            long offset = HEADER_BYTES + index.capacity();
+            channel.truncate(0);
+            channel.position(offset);
+            for (int i = 0; i < records.size(); i++) {
+                byte[] iv = new byte[IV_LENGTH_BYTES];
+                ivs.get(iv);
+                cipher.init(Cipher.ENCRYPT_MODE, secretKey, new GCMParameterSpec(TAG_LENGTH_BYTES * 8, iv));
+                cipher.updateAAD(header.array());
+                cipher.updateAAD(ByteBuffer.allocate(4).putInt(0, i));
+                byte[] encrypted = cipher.doFinal(records.get(i));
+
+                index.putLong(offset);
+                index.putInt(encrypted.length);
+                index.put(iv);
+                writeFully(channel, ByteBuffer.wrap(encrypted));
+                offset += encrypted.length;
+            }
+
+            header.flip();
+            index.flip();
+            channel.position(0);
+            writeFully(channel, header);
+            writeFully(channel, index);
+            channel.force(false);
+            return true;
+        } catch (NoSuchAlgorithmException e) {
+        } catch (NoSuchPaddingException e) {
+        } catch (InvalidKeyException e) {
+        } catch (InvalidAlgorithmParameterException e) {
+        } catch (IllegalBlockSizeException e) {
+        } catch (BadPaddingException e) {
+        } finally {
+            Arrays.fill(key, (byte) 0);
+        }
+
+        return false;
+    }
+
+    // Open the file in channel with password, which is cleared. Only the header is read here.
+    // Return null if the file is not of this format. A wrong password is detected when a record is read.
+    public static EncryptedRecordFile open(final FileChannel channel, final char[] password) throws IOException {
+        long size = channel.size();
+        if (size < HEADER_BYTES) {
+            Arrays.fill(password, '?');
+            return null;
+        }
+
+        MappedByteBuffer map = channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+        byte[] header = new byte[HEADER_BYTES];
+        map.get(header);
+        ByteBuffer in = ByteBuffer.wrap(header);
+        byte[] magic = new byte[MAGIC.length];
+        in.get(magic);
+        byte version = in.get();
+        in.position(in.position() + 3);
+        int iterationCount = in.getInt();
+        byte[] salt = new byte[AesCryptoPBEKey.SALT_LENGTH_BYTES];
+        in.get(salt);
+        int recordCount = in.getInt();
+
+        if (!Arrays.equals(magic, MAGIC) || version != VERSION || recordCount < 0
+                || (long) recordCount * INDEX_ENTRY_BYTES > size - HEADER_BYTES) {
+            Arrays.fill(password, '?');
+            return null;
+        }
+
+        // *** POINT 3 *** When generating keys from passwords, use Salt.
+        // Always use the iteration count stored in the file.
+        byte[] key = AesCryptoPBEKey.generateKeyBytes(password, salt, iterationCount);
+        if (key == null) return null;
+        return new EncryptedRecordFile(map, header, recordCount, key);
+    }
+
+    public int getRecordCount() {
+        return mRecordCount;
+    }
+
+    // Decrypt the i-th record, reading only its index entry and its own bytes.
+    // Return null if the password is wrong, or the record or the header has been tampered with.
+    public byte[] read(final int i) {
+        if (i < 0 || i >= mRecordCount) return null;
+
+        ByteBuffer entry = mMap.duplicate();
+        entry.position(HEADER_BYTES + i * INDEX_ENTRY_BYTES);
+        long offset = entry.getLong();
+        int length = entry.getInt();
+        byte[] iv = new byte[IV_LENGTH_BYTES];
+        entry.get(iv);
+        if (offset < HEADER_BYTES || length < TAG_LENGTH_BYTES || offset + length > mMap.capacity()) return null;
+
+        byte[] plain = null;
+
+        try {
+            Cipher cipher = Cipher.getInstance(TRANSFORMATION);
+            cipher.init(Cipher.DECRYPT_MODE, new SecretKeySpec(mKey, KEY_ALGORITHM),
+                    new GCMParameterSpec(TAG_LENGTH_BYTES * 8, iv));
+            cipher.updateAAD(mHeader);
+            cipher.updateAAD(ByteBuffer.allocate(4).putInt(0, i));
+
+            ByteBuffer encrypted = mMap.duplicate();
+            encrypted.position((int) offset);
+            encrypted.limit((int) offset + length);
+            ByteBuffer out = ByteBuffer.allocate(length - TAG_LENGTH_BYTES);
+            cipher.doFinal(encrypted, out);
+            plain = out.array();
+        } catch (NoSuchAlgorithmException e) {
+        } catch (NoSuchPaddingException e) {
+        } catch (InvalidKeyException e) {
+        } catch (InvalidAlgorithmParameterException e) {
+        } catch (ShortBufferException e) {
+        } catch (IllegalBlockSizeException e) {
+        } catch (BadPaddingException e) {
+        } finally {
+        }
+
+        return plain;
+    }
+
+    // Clear the key. Records can not be read after this.
+    public void close() {
+        Arrays.fill(mKey, (byte) 0);
+    }
+
+    private static void writeFully(final FileChannel channel, final ByteBuffer buffer) throws IOException {
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+    }
+}
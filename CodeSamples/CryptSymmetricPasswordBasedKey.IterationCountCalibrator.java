@@ -0,0 +1,56 @@
+package org.jssec.android.cryptsymmetricpasswordbasedkey;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+
+// Choose the iteration count of PBE key derivation by measuring the speed of this device,
+// so that the count is as high as possible while deriving a key takes about the given time.
+// The result is measured once and kept in a private preference file.
+final class IterationCountCalibrator {
+
+    private static final String PREF_FILE = "pbe_iteration_count";
+
+    // A measurement must take at least this long to be reliable.
+    private static final long MIN_MEASUREMENT_NANOS = 50L * 1000 * 1000;
+
+    private IterationCountCalibrator() {
+    }
+
+    // Return the iteration count for name (e.g. the key derivation algorithm) and budgetMillis,
+    // between minCount and maxCount. This may take about twice budgetMillis on the first call: call it off the UI thread.
+    static int get(final Context context, final String name, final long budgetMillis,
+                   final int minCount, final int maxCount, final DerivedKeyCache.Deriver deriver) {
+        SharedPreferences prefs = context.getSharedPreferences(PREF_FILE, Context.MODE_PRIVATE);
+        String key = name + ":" + budgetMillis;
+        int count = prefs.getInt(key, 0);
+        if (count >= minCount && count <= maxCount) return count;
+
+        count = measure(budgetMillis, minCount, maxCount, deriver);
+        prefs.edit().putInt(key, count).apply();
+        return count;
+    }
+
+    private static int measure(final long budgetMillis, final int minCount, final int maxCount,
+                               final DerivedKeyCache.Deriver deriver) {
+        byte[] salt = new byte[20];
+        // The first derivation includes class loading and provider lookup, so it is not measured.
+        deriver.derive("calibration".toCharArray(), salt, minCount);
+
+        // Double the iteration count until a derivation takes long enough to be measured.
+        int probe = minCount;
+        long elapsed;
+        while (true) {
+            long start = System.nanoTime();
+            deriver.derive("calibration".toCharArray(), salt, probe);
+            elapsed = Math.max(1, System.nanoTime() - start);
+            if (elapsed >= MIN_MEASUREMENT_NANOS || probe > maxCount / 2) break;
+            probe *= 2;
+        }
+
+        long count = probe * (budgetMillis * 1000 * 1000) / elapsed;
+        if (count < minCount) return minCount;
+        if (count > maxCount) return maxCount;
+        // Round down to a multiple of 1000 for readability of stored headers.
+        return (int) Math.max(minCount, count / 1000 * 1000);
+    }
+}
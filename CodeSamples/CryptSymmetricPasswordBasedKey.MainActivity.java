@@ -1,5 +1,9 @@
 package org.jssec.android.cryptsymmetricpasswordbasedkey;
 
+import java.util.List;
+
+import org.jssec.android.shared.CryptoWarmUp;
+
 import android.os.Bundle;
 import android.app.Activity;
 import android.content.Intent;
@@ -14,6 +18,35 @@ public class MainActivity extends Activity {
     protected void onCreate(Bundle savedInstanceState) {
         super.onCreate(savedInstanceState);
         setContentView(R.layout.activity_main);
+
+        if (CryptoApplication.WARM_UP_CRYPTO) {
+            // Show the time taken by the first (cold) and by a later (warm) operation of each algorithm
+            final TextView textViewWarmUp = (TextView) findViewById(R.id.textViewWarmUp);
+            textViewWarmUp.setVisibility(View.VISIBLE);
+            CryptoApplication.getCryptoWarmUp().setListener(new CryptoWarmUp.Listener() {
+                @Override
+                public void onFinished(final List<CryptoWarmUp.Metric> metrics) {
+                    runOnUiThread(new Runnable() {
+                        @Override
+                        public void run() {
+                            StringBuilder text = new StringBuilder();
+                            for (CryptoWarmUp.Metric metric : metrics) {
+                                text.append(metric).append('\n');
+                            }
+                            textViewWarmUp.setText(text);
+                        }
+                    });
+                }
+            });
+        }
+    }
+
+    @Override
+    protected void onDestroy() {
+        if (CryptoApplication.WARM_UP_CRYPTO) {
+            CryptoApplication.getCryptoWarmUp().setListener(null);
+        }
+        super.onDestroy();
     }
     
     public void onSave(View view) {
@@ -1,13 +1,18 @@
 package org.jssec.android.cryptsymmetricpasswordbasedkey;
 
+import java.io.DataInputStream;
 import java.io.FileInputStream;
 import java.io.FileNotFoundException;
 import java.io.FileOutputStream;
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
 
 import android.app.Activity;
 import android.content.Context;
 import android.content.Intent;
+import android.os.AsyncTask;
 import android.os.Bundle;
 import android.text.Editable;
 import android.view.View;
@@ -20,6 +25,12 @@ public class SaveLoadActivity extends Activity {
 
     private final static String filename = "encrypted.dat";
 
+    // Time which key derivation from a password may take on this device. The iteration count is chosen to fit it.
+    private final static long KEY_GEN_BUDGET_MILLIS = 300;
+
+    // Data is saved as an EncryptedRecordFile. Files saved by older versions (salt length, salt, IV length, IV,
+    // encrypted data) are still loaded, with the default iteration count.
+
     boolean saveMode = true;
     String memo = null;
 
@@ -54,28 +65,53 @@ public class SaveLoadActivity extends Activity {
         if (textViewPassword.getEditableText() != null) {
             char[] password = toChars(textViewPassword.getEditableText());
             clearEditableText(textViewPassword.getEditableText());
+            // Key derivation takes about KEY_GEN_BUDGET_MILLIS (and twice that while calibrating),
+            // so it is done off the UI thread, and the activity finishes when it is done.
+            view.setEnabled(false);
+            new SaveLoadTask(password).execute();
+            return;
+        }
+        finish();
+    }
+
+    private class SaveLoadTask extends AsyncTask<Void, Void, Boolean> {
+        private final char[] mPassword;
+        private String mLoadedMemo = null;
+
+        SaveLoadTask(final char[] password) {
+            mPassword = password;
+        }
+
+        @Override
+        protected Boolean doInBackground(Void... params) {
             if (saveMode == true) {
-                AesCryptoPBEKey cipher = new AesCryptoPBEKey();
-                byte[] encrypted = cipher.encrypt(memo.getBytes(), password);
-                CryptData data = new CryptData(cipher.getIV(), cipher.getSalt(), encrypted);
-                save(filename, data);
+                int iterationCount = AesCryptoPBEKey.calibrateIterationCount(SaveLoadActivity.this, KEY_GEN_BUDGET_MILLIS);
+                List<byte[]> records = new ArrayList<byte[]>();
+                records.add(memo.getBytes());
+                return save(filename, records, mPassword, iterationCount);
+            } else {
+                byte[] plain = load(filename, 0, mPassword);
+                if (plain == null) return false;
+                mLoadedMemo = new String(plain);
+                return true;
+            }
+        }
+
+        @Override
+        protected void onPostExecute(Boolean succeeded) {
+            if (succeeded == false) {
+                setResult(RESULT_FAILED);
+            } else if (saveMode == true) {
                 setResult(RESULT_SUCCEEDED);
             } else {
-                CryptData data = load(filename);
-                AesCryptoPBEKey cipher = new AesCryptoPBEKey(data.mIV, data.mSalt);
-                byte[] plain = cipher.decrypt(data.mData, password);
-                Intent intent = new Intent();
-                if (plain == null) {
-                    setResult(RESULT_FAILED);
-                } else {
-                    memo = new String(plain);
+                memo = mLoadedMemo;
 
-                    intent.putExtra("memo", memo);
-                    setResult(RESULT_SUCCEEDED, intent);
-                }
+                Intent intent = new Intent();
+                intent.putExtra("memo", memo);
+                setResult(RESULT_SUCCEEDED, intent);
             }
+            finish();
         }
-        finish();
     }
 
     private char[] toChars(Editable editable) {
@@ -94,57 +130,77 @@ public class SaveLoadActivity extends Activity {
         }
     }
 
-    private CryptData load(final String name) {
-        CryptData ret = null;
+    // Decrypt the index-th record of the file. Only that record is read and decrypted.
+    // Files of older versions hold a single record. password is cleared.
+    private byte[] load(final String name, final int index, final char[] password) {
+        byte[] ret = null;
 
         FileInputStream fileInput = null;
+        EncryptedRecordFile recordFile = null;
 
         try {
-            int length = 0;
-
             fileInput = openFileInput(name);
 
-            length = fileInput.read();
-            byte[] salt = new byte[length];
-            fileInput.read(salt);
-
-            length = fileInput.read();
-            byte[] iv = new byte[length];
-            fileInput.read(iv);
-
-            long lengthEnc = fileInput.getChannel().size() - salt.length - iv.length - 2;
-
-            byte[] encrypted = new byte[(int) lengthEnc];
-
-            fileInput.read(encrypted);
-
-            ret = new CryptData(iv, salt, encrypted);
+            if (EncryptedRecordFile.isRecordFile(fileInput.getChannel())) {
+                recordFile = EncryptedRecordFile.open(fileInput.getChannel(), password);
+                if (recordFile != null) {
+                    ret = recordFile.read(index);
+                }
+            } else if (index == 0) {
+                CryptData data = loadLegacy(fileInput);
+                if (data != null) {
+                    AesCryptoPBEKey cipher = new AesCryptoPBEKey(data.mIV, data.mSalt);
+                    ret = cipher.decrypt(data.mData, password);
+                }
+            }
         } catch (FileNotFoundException e) {
         } catch (IOException e) {
         } finally {
+            if (recordFile != null) {
+                recordFile.close();
+            }
             if (fileInput != null) {
                 try {
                     fileInput.close();
                 } catch (IOException e) {
                 }
             }
+            // Clear password, in case it has not been used
+            Arrays.fill(password, '?');
         }
 
         return ret;
     }
 
-    private boolean save(final String name, CryptData data) {
+    // Read a file saved by older versions. Return null if the file is broken.
+    private CryptData loadLegacy(final FileInputStream fileInput) throws IOException {
+        DataInputStream in = new DataInputStream(fileInput);
+        long remaining = fileInput.getChannel().size();
+
+        int length = in.readUnsignedByte();
+        remaining--;
+        byte[] salt = new byte[length];
+        in.readFully(salt);
+
+        length = in.readUnsignedByte();
+        byte[] iv = new byte[length];
+        in.readFully(iv);
+        remaining -= salt.length + 1 + iv.length;
+
+        if (remaining < 0 || remaining > Integer.MAX_VALUE) return null;
+        byte[] encrypted = new byte[(int) remaining];
+        in.readFully(encrypted);
+
+        return new CryptData(iv, salt, encrypted);
+    }
+
+    private boolean save(final String name, final List<byte[]> records, final char[] password, final int iterationCount) {
         boolean ret = false;
         FileOutputStream fileOutput = null;
 
         try {
             fileOutput = openFileOutput(name, Context.MODE_PRIVATE);
-            fileOutput.write(data.mSalt.length);
-            fileOutput.write(data.mSalt);
-            fileOutput.write(data.mIV.length);
-            fileOutput.write(data.mIV);
-            fileOutput.write(data.mData);
-            ret = true;
+            ret = EncryptedRecordFile.write(fileOutput.getChannel(), records, password, iterationCount);
         } catch (FileNotFoundException e) {
         } catch (IOException e) {
         } finally {
@@ -154,6 +210,8 @@ public class SaveLoadActivity extends Activity {
                 } catch (IOException e) {
                 }
             }
+            // Clear password, in case it has not been used
+            Arrays.fill(password, '?');
         }
 
         return ret;
@@ -2,7 +2,9 @@ package org.jssec.android.cryptsymmetricpresharedkey;
 
 import java.security.InvalidAlgorithmParameterException;
 import java.security.InvalidKeyException;
+import java.security.MessageDigest;
 import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
 
 import javax.crypto.BadPaddingException;
 import javax.crypto.Cipher;
@@ -30,6 +32,36 @@ public final class AesCryptoPreSharedKey {
     // Check the length of the key
     private static final int MIN_KEY_LENGTH_BYTES = 16;
 
+    // Cipher is not thread-safe, and getInstance() looks up the provider on every call,
+    // so each thread keeps its own engine and reuses it.
+    // The engine holds the key, so call clear() on each thread which has used this class when the key is no longer needed.
+    private static final class Engine {
+        final Cipher cipher;
+        private byte[] mKeyData = null;
+        private SecretKey mSecretKey = null;
+
+        Engine(final Cipher cipher) {
+            this.cipher = cipher;
+        }
+
+        // Return the key for keyData, reusing the last one if keyData has not changed.
+        SecretKey key(final byte[] keyData) {
+            if (mSecretKey == null || !MessageDigest.isEqual(mKeyData, keyData)) {
+                mSecretKey = generateKey(keyData);
+                mKeyData = (mSecretKey != null) ? keyData.clone() : null;
+            }
+            return mSecretKey;
+        }
+
+        void clear() {
+            if (mKeyData != null) Arrays.fill(mKeyData, (byte) 0);
+            mKeyData = null;
+            mSecretKey = null;
+        }
+    }
+
+    private static final ThreadLocal<Engine> sEngine = new ThreadLocal<Engine>();
+
     private byte[] mIV = null;
 
     public byte[] getIV() {
@@ -43,15 +75,23 @@ public final class AesCryptoPreSharedKey {
     AesCryptoPreSharedKey() {
     }
 
+    // Overwrite the copy of the key kept for the calling thread, and release its engine.
+    public static void clear() {
+        Engine engine = sEngine.get();
+        if (engine != null) engine.clear();
+        sEngine.remove();
+    }
+
     public final byte[] encrypt(final byte[] keyData, final byte[] plain) {
         byte[] encrypted = null;
 
         try {
             // *** POINT 1 *** Explicitly specify the encryption mode and the padding.
             // *** POINT 2 *** Use strong encryption methods (specifically, technologies that meet the relevant criteria), including algorithms, block cipher modes, and padding modes.
-            Cipher cipher = Cipher.getInstance(TRANSFORMATION);
+            Engine engine = getEngine();
+            Cipher cipher = engine.cipher;
 
-            SecretKey secretKey = generateKey(keyData);
+            SecretKey secretKey = engine.key(keyData);
             if (secretKey != null) {
                 cipher.init(Cipher.ENCRYPT_MODE, secretKey);
                 mIV = cipher.getIV();
@@ -75,9 +115,10 @@ public final class AesCryptoPreSharedKey {
         try {
             // *** POINT 1 *** Explicitly specify the encryption mode and the padding.
             // *** POINT 2 *** Use strong encryption methods (specifically, technologies that meet the relevant criteria), including algorithms, block cipher modes, and padding modes.
-            Cipher cipher = Cipher.getInstance(TRANSFORMATION);
+            Engine engine = getEngine();
+            Cipher cipher = engine.cipher;
 
-            SecretKey secretKey = generateKey(keyData);
+            SecretKey secretKey = engine.key(keyData);
             if (secretKey != null) {
                 IvParameterSpec ivParameterSpec = new IvParameterSpec(mIV);
                 cipher.init(Cipher.DECRYPT_MODE, secretKey, ivParameterSpec);
@@ -96,6 +137,15 @@ public final class AesCryptoPreSharedKey {
         return plain;
     }
 
+    private static final Engine getEngine() throws NoSuchAlgorithmException, NoSuchPaddingException {
+        Engine engine = sEngine.get();
+        if (engine == null) {
+            engine = new Engine(Cipher.getInstance(TRANSFORMATION));
+            sEngine.set(engine);
+        }
+        return engine;
+    }
+
     private static final SecretKey generateKey(final byte[] keyData) {
         SecretKey secretKey = null;
 
@@ -0,0 +1,166 @@
+package org.jssec.android.cryptsymmetricpresharedkey;
+
+import java.nio.ByteBuffer;
+import java.security.InvalidAlgorithmParameterException;
+import java.security.InvalidKeyException;
+import java.security.NoSuchAlgorithmException;
+import java.security.SecureRandom;
+
+import javax.crypto.BadPaddingException;
+import javax.crypto.Cipher;
+import javax.crypto.IllegalBlockSizeException;
+import javax.crypto.NoSuchPaddingException;
+import javax.crypto.SecretKey;
+import javax.crypto.ShortBufferException;
+import javax.crypto.spec.GCMParameterSpec;
+import javax.crypto.spec.SecretKeySpec;
+
+// Authenticated encryption by AES-GCM on ByteBuffers.
+// Integrity of both the encrypted data and the associated data (e.g. a header sent in the clear) is checked
+// in the same pass as decryption, so no separate MAC is needed.
+// Data can be encrypted/decrypted in place, in the same buffer (see encryptInPlace() and decrypt()).
+public final class AesGcmPreSharedKey {
+
+    // *** POINT 1 *** Explicitly specify the encryption mode and the padding.
+    // *** POINT 2 *** Use strong encryption methods (specifically, technologies that meet the relevant criteria), including algorithms, block cipher modes, and padding modes.
+    // Parameters passed to getInstance method of the Cipher class: Encryption algorithm, block encryption mode, padding rule
+    // In this sample, we choose the following parameter values: encryption algorithm=AES, block encryption mode=GCM, padding rule=NoPadding
+    private static final String TRANSFORMATION = "AES/GCM/NoPadding";
+
+    // Encryption algorithm
+    private static final String KEY_ALGORITHM = "AES";
+
+    // Length of IV in bytes. GCM is designed for 96 bits IV.
+    public static final int IV_LENGTH_BYTES = 12;
+
+    // Length of the authentication tag appended to the encrypted data
+    public static final int TAG_LENGTH_BYTES = 16;
+
+    // *** POINT 3 *** Use a key of length sufficient to guarantee the strength of encryption
+    // Check the length of the key
+    private static final int MIN_KEY_LENGTH_BYTES = 16;
+
+    // Cipher is not thread-safe, and getInstance() looks up the provider on every call,
+    // so each thread keeps its own instance and reuses it.
+    private static final ThreadLocal<Cipher> sCipher = new ThreadLocal<Cipher>();
+
+    private static final SecureRandom sRandom = new SecureRandom();
+
+    private byte[] mIV = null;
+
+    public byte[] getIV() {
+        return mIV;
+    }
+
+    AesGcmPreSharedKey(final byte[] iv) {
+        mIV = iv;
+    }
+
+    AesGcmPreSharedKey() {
+    }
+
+    // Encrypt the remaining bytes of plain, and write the encrypted data followed by the tag to out.
+    // out needs plain.remaining() + TAG_LENGTH_BYTES bytes. aad is authenticated but not encrypted, and may be null.
+    // To encrypt in place, use encryptInPlace().
+    // Return the number of bytes written, or -1 on failure.
+    public final int encrypt(final byte[] keyData, final ByteBuffer plain, final ByteBuffer out, final ByteBuffer aad) {
+        int written = -1;
+
+        try {
+            // *** POINT 1 *** Explicitly specify the encryption mode and the padding.
+            // *** POINT 2 *** Use strong encryption methods (specifically, technologies that meet the relevant criteria), including algorithms, block cipher modes, and padding modes.
+            Cipher cipher = getCipher();
+
+            SecretKey secretKey = generateKey(keyData);
+            if (secretKey != null) {
+                // An IV must never be used twice with the same key in GCM, so it is generated at random every time.
+                byte[] iv = new byte[IV_LENGTH_BYTES];
+                sRandom.nextBytes(iv);
+                cipher.init(Cipher.ENCRYPT_MODE, secretKey, new GCMParameterSpec(TAG_LENGTH_BYTES * 8, iv));
+                mIV = iv;
+
+                if (aad != null) cipher.updateAAD(aad);
+                written = cipher.doFinal(plain, out);
+            }
+        } catch (NoSuchAlgorithmException e) {
+        } catch (NoSuchPaddingException e) {
+        } catch (InvalidKeyException e) {
+        } catch (InvalidAlgorithmParameterException e) {
+        } catch (ShortBufferException e) {
+        } catch (IllegalBlockSizeException e) {
+        } catch (BadPaddingException e) {
+        } finally {
+        }
+
+        return written;
+    }
+
+    // Encrypt the remaining bytes of data in place, and write the tag just after them.
+    // The limit of data must leave TAG_LENGTH_BYTES bytes before its capacity. aad may be null.
+    // Return the number of bytes written (the encrypted data and the tag), or -1 on failure.
+    public final int encryptInPlace(final byte[] keyData, final ByteBuffer data, final ByteBuffer aad) {
+        if (data.capacity() - data.limit() < TAG_LENGTH_BYTES) return -1;
+        // The output view starts where the input does, and also covers the room for the tag.
+        ByteBuffer out = data.duplicate();
+        out.limit(data.limit() + TAG_LENGTH_BYTES);
+        return encrypt(keyData, data, out, aad);
+    }
+
+    // Decrypt the remaining bytes of encrypted (encrypted data followed by the tag), and write the plain data to out.
+    // out needs encrypted.remaining() - TAG_LENGTH_BYTES bytes. aad must be the same as given to encrypt.
+    // To decrypt in place, give encrypted.duplicate() as out.
+    // Return the number of bytes written, or -1 if the data or aad has been tampered with, or on other failures.
+    public final int decrypt(final byte[] keyData, final ByteBuffer encrypted, final ByteBuffer out, final ByteBuffer aad) {
+        int written = -1;
+
+        try {
+            // *** POINT 1 *** Explicitly specify the encryption mode and the padding.
+            // *** POINT 2 *** Use strong encryption methods (specifically, technologies that meet the relevant criteria), including algorithms, block cipher modes, and padding modes.
+            Cipher cipher = getCipher();
+
+            SecretKey secretKey = generateKey(keyData);
+            if (secretKey != null) {
+                cipher.init(Cipher.DECRYPT_MODE, secretKey, new GCMParameterSpec(TAG_LENGTH_BYTES * 8, mIV));
+
+                if (aad != null) cipher.updateAAD(aad);
+                // The tag is checked before any plain data is returned (AEADBadTagException).
+                written = cipher.doFinal(encrypted, out);
+            }
+        } catch (NoSuchAlgorithmException e) {
+        } catch (NoSuchPaddingException e) {
+        } catch (InvalidKeyException e) {
+        } catch (InvalidAlgorithmParameterException e) {
+        } catch (ShortBufferException e) {
+        } catch (IllegalBlockSizeException e) {
+        } catch (BadPaddingException e) {
+        } finally {
+        }
+
+        return written;
+    }
+
+    private static final Cipher getCipher() throws NoSuchAlgorithmException, NoSuchPaddingException {
+        Cipher cipher = sCipher.get();
+        if (cipher == null) {
+            cipher = Cipher.getInstance(TRANSFORMATION);
+            sCipher.set(cipher);
+        }
+        return cipher;
+    }
+
+    private static final SecretKey generateKey(final byte[] keyData) {
+        SecretKey secretKey = null;
+
+        try {
+            // *** POINT 3 *** Use a key of length sufficient to guarantee the strength of encryption
+            if (keyData.length >= MIN_KEY_LENGTH_BYTES) {
+                // *** POINT 2 *** Use strong encryption methods (specifically, technologies that meet the relevant criteria), including algorithms, block cipher modes, and padding modes.
+                secretKey = new SecretKeySpec(keyData, KEY_ALGORITHM);
+            }
+        } catch (IllegalArgumentException e) {
+        } finally {
+        }
+
+        return secretKey;
+    }
+}
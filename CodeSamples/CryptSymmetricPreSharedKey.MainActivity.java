@@ -32,6 +32,13 @@ public class MainActivity extends Activity {
         setContentView(R.layout.activity_main);
     }
 
+    @Override
+    protected void onDestroy() {
+        // The key kept by the engine of this (main) thread is no longer needed.
+        AesCryptoPreSharedKey.clear();
+        super.onDestroy();
+    }
+
     public void onSave(View view) {
         TextView textViewMemo = (TextView) findViewById(R.id.editTextMemo);
         String memo = textViewMemo.getText().toString();
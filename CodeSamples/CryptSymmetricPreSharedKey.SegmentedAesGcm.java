@@ -0,0 +1,243 @@
+package org.jssec.android.cryptsymmetricpresharedkey;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+import java.security.GeneralSecurityException;
+import java.security.SecureRandom;
+import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import javax.crypto.Cipher;
+import javax.crypto.Mac;
+import javax.crypto.SecretKey;
+import javax.crypto.spec.GCMParameterSpec;
+import javax.crypto.spec.SecretKeySpec;
+
+// Encryption of large data split into segments, each encrypted independently by AES-GCM.
+// Segments are processed in parallel, so encryption and decryption of large data scale with the number of cores.
+//
+// Format:
+//   header (21 bytes): version (1) | segment size (4, big endian) | salt (16, random)
+//   segments: encrypted segment followed by its tag (16). Every segment but the last holds segment size bytes.
+// Each data is encrypted by its own key, HMAC-SHA256 of the salt under the pre-shared key, so that IVs never
+// repeat under one key however many data are encrypted by the pre-shared key. (A random nonce prefix under the
+// pre-shared key itself would leave too few random bits per data.)
+// The IV of segment i is 0 (7) | i (4, big endian) | 1 if the last segment, otherwise 0 (1).
+// The header is authenticated as associated data of every segment, so segments can neither be reordered,
+// nor moved to other data, nor dropped from the end, without failing decryption.
+public final class SegmentedAesGcm {
+
+    // *** POINT 1 *** Explicitly specify the encryption mode and the padding.
+    // *** POINT 2 *** Use strong encryption methods (specifically, technologies that meet the relevant criteria), including algorithms, block cipher modes, and padding modes.
+    private static final String TRANSFORMATION = "AES/GCM/NoPadding";
+
+    // Encryption algorithm
+    private static final String KEY_ALGORITHM = "AES";
+
+    // *** POINT 3 *** Use a key of length sufficient to guarantee the strength of encryption
+    // Check the length of the key
+    private static final int MIN_KEY_LENGTH_BYTES = 16;
+
+    private static final byte VERSION = 2;
+    private static final int SALT_LENGTH_BYTES = 16;
+    public static final int HEADER_BYTES = 1 + 4 + SALT_LENGTH_BYTES;
+    private static final int IV_LENGTH_BYTES = 12;
+    private static final int TAG_LENGTH_BYTES = 16;
+
+    // Size of plain data in a segment
+    public static final int SEGMENT_SIZE_BYTES = 64 * 1024;
+    // Upper limit of the segment size accepted in the header of data to be decrypted
+    private static final int MAX_SEGMENT_SIZE_BYTES = 16 * 1024 * 1024;
+    // Number of segments processed by one task without splitting it further
+    private static final int SEGMENTS_PER_TASK = 4;
+
+    // Derivation of the key of each data from the pre-shared key
+    private static final String KDF_ALGORITHM = "HmacSHA256";
+    private static final byte[] KDF_LABEL = "JSSEC SegmentedAesGcm key".getBytes(Charset.forName("UTF-8"));
+    // Length of the derived AES key: 256 bits for pre-shared keys of 256 bits or more, 128 bits otherwise
+    private static final int LONG_KEY_LENGTH_BYTES = 32;
+    private static final int SHORT_KEY_LENGTH_BYTES = 16;
+
+    private static final SecureRandom sRandom = new SecureRandom();
+
+    // Cipher is not thread-safe, so each worker thread keeps its own instance.
+    private static final ThreadLocal<Cipher> sCipher = new ThreadLocal<Cipher>();
+
+    SegmentedAesGcm() {
+    }
+
+    // Return the encrypted data, or null on failure.
+    public final byte[] encrypt(final byte[] keyData, final byte[] plain) {
+        byte[] salt = new byte[SALT_LENGTH_BYTES];
+        sRandom.nextBytes(salt);
+        SecretKey secretKey = generateKey(keyData, salt);
+        if (secretKey == null) return null;
+
+        int segmentSize = SEGMENT_SIZE_BYTES;
+        int segments = Math.max(1, (plain.length + segmentSize - 1) / segmentSize);
+        long length = (long) HEADER_BYTES + plain.length + (long) segments * TAG_LENGTH_BYTES;
+        if (length > Integer.MAX_VALUE) return null;
+
+        byte[] encrypted = new byte[(int) length];
+        ByteBuffer header = ByteBuffer.wrap(encrypted, 0, HEADER_BYTES);
+        header.put(VERSION);
+        header.putInt(segmentSize);
+        header.put(salt);
+
+        Segments task = new Segments(Cipher.ENCRYPT_MODE, secretKey, segmentSize, segments,
+                plain, plain.length, encrypted, encrypted, 0, segments);
+        // Segments are processed in the shared pool of the process, which needs no shutdown.
+        ForkJoinPool.commonPool().invoke(task);
+        return task.mFailed.get() ? null : encrypted;
+    }
+
+    // Return the plain data, or null if the data has been tampered with, or on other failures.
+    public final byte[] decrypt(final byte[] keyData, final byte[] encrypted) {
+        if (encrypted.length < HEADER_BYTES + TAG_LENGTH_BYTES) return null;
+        ByteBuffer header = ByteBuffer.wrap(encrypted, 0, HEADER_BYTES);
+        if (header.get() != VERSION) return null;
+        int segmentSize = header.getInt();
+        if (segmentSize <= 0 || segmentSize > MAX_SEGMENT_SIZE_BYTES) return null;
+        byte[] salt = new byte[SALT_LENGTH_BYTES];
+        header.get(salt);
+
+        SecretKey secretKey = generateKey(keyData, salt);
+        if (secretKey == null) return null;
+
+        int body = encrypted.length - HEADER_BYTES;
+        int stride = segmentSize + TAG_LENGTH_BYTES;
+        int segments = (int) (((long) body + stride - 1) / stride);
+        int last = body - (segments - 1) * stride;
+        if (last < TAG_LENGTH_BYTES) return null;
+
+        byte[] plain = new byte[body - segments * TAG_LENGTH_BYTES];
+        Segments task = new Segments(Cipher.DECRYPT_MODE, secretKey, segmentSize, segments,
+                encrypted, encrypted.length, plain, encrypted, 0, segments);
+        ForkJoinPool.commonPool().invoke(task);
+        return task.mFailed.get() ? null : plain;
+    }
+
+    // Encrypt or decrypt segments [from, to), splitting the range into tasks of SEGMENTS_PER_TASK segments.
+    private static final class Segments extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+
+        private final int mMode;
+        private final SecretKey mKey;
+        private final int mSegmentSize;
+        private final int mSegments;
+        private final byte[] mIn;
+        private final int mInLength;
+        private final byte[] mOut;
+        private final byte[] mHeader;
+        private final int mFrom;
+        private final int mTo;
+        final AtomicBoolean mFailed;
+
+        Segments(int mode, SecretKey key, int segmentSize, int segments,
+                 byte[] in, int inLength, byte[] out, byte[] header, int from, int to) {
+            this(mode, key, segmentSize, segments, in, inLength, out, header, from, to, new AtomicBoolean(false));
+        }
+
+        private Segments(int mode, SecretKey key, int segmentSize, int segments,
+                         byte[] in, int inLength, byte[] out, byte[] header, int from, int to, AtomicBoolean failed) {
+            mMode = mode;
+            mKey = key;
+            mSegmentSize = segmentSize;
+            mSegments = segments;
+            mIn = in;
+            mInLength = inLength;
+            mOut = out;
+            mHeader = header;
+            mFrom = from;
+            mTo = to;
+            mFailed = failed;
+        }
+
+        @Override
+        protected void compute() {
+            if (mFailed.get()) return;
+            if (mTo - mFrom > SEGMENTS_PER_TASK) {
+                int mid = (mFrom + mTo) >>> 1;
+                invokeAll(new Segments(mMode, mKey, mSegmentSize, mSegments, mIn, mInLength, mOut, mHeader, mFrom, mid, mFailed),
+                        new Segments(mMode, mKey, mSegmentSize, mSegments, mIn, mInLength, mOut, mHeader, mid, mTo, mFailed));
+                return;
+            }
+
+            try {
+                Cipher cipher = getCipher();
+                for (int i = mFrom; i < mTo && !mFailed.get(); i++) {
+                    process(cipher, i);
+                }
+            } catch (GeneralSecurityException e) {
+                mFailed.set(true);
+            }
+        }
+
+        private void process(Cipher cipher, int i) throws GeneralSecurityException {
+            int plainStride = mSegmentSize;
+            int encryptedStride = mSegmentSize + TAG_LENGTH_BYTES;
+            int inOffset;
+            int inLength;
+            int outOffset;
+            if (mMode == Cipher.ENCRYPT_MODE) {
+                inOffset = i * plainStride;
+                inLength = Math.min(plainStride, mInLength - inOffset);
+                outOffset = HEADER_BYTES + i * encryptedStride;
+            } else {
+                inOffset = HEADER_BYTES + i * encryptedStride;
+                inLength = Math.min(encryptedStride, mInLength - inOffset);
+                outOffset = i * plainStride;
+            }
+
+            // The key is used only for this data, so the first 7 bytes of the IV are left 0.
+            byte[] iv = new byte[IV_LENGTH_BYTES];
+            iv[7] = (byte) (i >>> 24);
+            iv[8] = (byte) (i >>> 16);
+            iv[9] = (byte) (i >>> 8);
+            iv[10] = (byte) i;
+            iv[11] = (byte) ((i == mSegments - 1) ? 1 : 0);
+
+            cipher.init(mMode, mKey, new GCMParameterSpec(TAG_LENGTH_BYTES * 8, iv));
+            cipher.updateAAD(mHeader, 0, HEADER_BYTES);
+            cipher.doFinal(mIn, inOffset, inLength, mOut, outOffset);
+        }
+    }
+
+    private static final Cipher getCipher() throws GeneralSecurityException {
+        Cipher cipher = sCipher.get();
+        if (cipher == null) {
+            cipher = Cipher.getInstance(TRANSFORMATION);
+            sCipher.set(cipher);
+        }
+        return cipher;
+    }
+
+    // Return the key of the data with salt, derived from the pre-shared key keyData.
+    private static final SecretKey generateKey(final byte[] keyData, final byte[] salt) {
+        SecretKey secretKey = null;
+        byte[] derived = null;
+
+        try {
+            // *** POINT 3 *** Use a key of length sufficient to guarantee the strength of encryption
+            if (keyData.length >= MIN_KEY_LENGTH_BYTES) {
+                Mac mac = Mac.getInstance(KDF_ALGORITHM);
+                mac.init(new SecretKeySpec(keyData, KDF_ALGORITHM));
+                mac.update(KDF_LABEL);
+                mac.update(salt);
+                derived = mac.doFinal();
+                // The derived key is always a valid AES key length, whatever the length of the pre-shared key.
+                int keyLength = keyData.length >= LONG_KEY_LENGTH_BYTES ? LONG_KEY_LENGTH_BYTES : SHORT_KEY_LENGTH_BYTES;
+                // *** POINT 2 *** Use strong encryption methods (specifically, technologies that meet the relevant criteria), including algorithms, block cipher modes, and padding modes.
+                secretKey = new SecretKeySpec(derived, 0, keyLength, KEY_ALGORITHM);
+            }
+        } catch (GeneralSecurityException e) {
+        } catch (IllegalArgumentException e) {
+        } finally {
+            if (derived != null) Arrays.fill(derived, (byte) 0);
+        }
+
+        return secretKey;
+    }
+}
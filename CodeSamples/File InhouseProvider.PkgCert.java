@@ -2,6 +2,8 @@ package org.jssec.android.shared;
 
 import java.security.MessageDigest;
 import java.security.NoSuchAlgorithmException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import android.content.Context;
 import android.content.pm.PackageInfo;
@@ -11,14 +13,56 @@ import android.content.pm.Signature;
 
 public class PkgCert {
 
+    // Certificate hash values already computed, per package name.
+    // An entry is discarded as soon as the package is installed, updated or removed,
+    // so that a hash value is never reused for a different package which has the same package name.
+    // A hit costs a map lookup only: no IPC to the package manager.
+    private static final ConcurrentHashMap<String, byte[]> sCache = new ConcurrentHashMap<String, byte[]>();
+    private static volatile boolean sCacheEnabled = false;
+    // Incremented on every package change, so that a hash value computed before the change is not cached after it.
+    private static final AtomicInteger sGeneration = new AtomicInteger();
+
+    private static final PkgChangeMonitor.Listener sInvalidator = new PkgChangeMonitor.Listener() {
+        @Override
+        public void onPackageChanged(String pkgname, int uid) {
+            sGeneration.incrementAndGet();
+            if (pkgname == null) {
+                sCache.clear();
+            } else {
+                sCache.remove(pkgname);
+            }
+        }
+    };
+
     public static boolean test(Context ctx, String pkgname, String correctHash) {
         if (correctHash == null) return false;
-        correctHash = correctHash.replaceAll(" ", "");
-        return correctHash.equals(hash(ctx, pkgname));
+        return test(ctx, pkgname, HexCodec.decode(correctHash));
+    }
+
+    public static boolean test(Context ctx, String pkgname, byte[] correctDigest) {
+        if (correctDigest == null) return false;
+        byte[] sha256 = digest(ctx, pkgname);
+        if (sha256 == null) return false;
+        // Compare in constant time, and without allocating memory.
+        return MessageDigest.isEqual(sha256, correctDigest);
     }
 
     public static String hash(Context ctx, String pkgname) {
+        return HexCodec.encode(digest(ctx, pkgname));
+    }
+
+    // The returned array may be shared with the cache. Do not modify it.
+    private static byte[] digest(Context ctx, String pkgname) {
         if (pkgname == null) return null;
+        if (!sCacheEnabled) {
+            // Cache can be used only while package changes are monitored.
+            sCacheEnabled = PkgChangeMonitor.register(ctx, sInvalidator);
+        }
+        int generation = sGeneration.get();
+        if (sCacheEnabled) {
+            byte[] cached = sCache.get(pkgname);
+            if (cached != null) return cached;
+        }
         try {
             PackageManager pm = ctx.getPackageManager();
             PackageInfo pkginfo = pm.getPackageInfo(pkgname, PackageManager.GET_SIGNATURES);
@@ -26,7 +70,12 @@ public class PkgCert {
             Signature sig = pkginfo.signatures[0];
             byte[] cert = sig.toByteArray();
             byte[] sha256 = computeSha256(cert);
-            return byte2hex(sha256);
+            if (sCacheEnabled && sha256 != null) {
+                sCache.put(pkgname, sha256);
+                // Discard the hash value if the package may have changed while computing it.
+                if (sGeneration.get() != generation) sCache.remove(pkgname, sha256);
+            }
+            return sha256;
         } catch (NameNotFoundException e) {
             return null;
         }
@@ -39,13 +88,4 @@ public class PkgCert {
             return null;
         }
     }
-
-    private static String byte2hex(byte[] data) {
-        if (data == null) return null;
-        final StringBuilder hexadecimal = new StringBuilder();
-        for (final byte b : data) {
-            hexadecimal.append(String.format("%02X", b));
-        }
-        return hexadecimal.toString();
-    }
 }
@@ -4,8 +4,9 @@ import android.app.KeyguardManager;
 import android.content.Context;
 import android.hardware.fingerprint.FingerprintManager;
 import android.os.CancellationSignal;
+import android.os.Handler;
+import android.os.Looper;
 import android.security.keystore.KeyGenParameterSpec;
-import android.security.keystore.KeyInfo;
 import android.security.keystore.KeyPermanentlyInvalidatedException;
 import android.security.keystore.KeyProperties;
 
@@ -18,41 +19,106 @@ import java.security.NoSuchAlgorithmException;
 import java.security.NoSuchProviderException;
 import java.security.UnrecoverableKeyException;
 import java.security.cert.CertificateException;
-import java.security.spec.InvalidKeySpecException;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 import javax.crypto.Cipher;
 import javax.crypto.KeyGenerator;
 import javax.crypto.NoSuchPaddingException;
 import javax.crypto.SecretKey;
-import javax.crypto.SecretKeyFactory;
 
 public class FingerprintAuthentication {
     private static final String KEY_NAME = "KeyForFingerprintAuthentication";
     private static final String PROVIDER_NAME = "AndroidKeyStore";
+    private static final String TRANSFORMATION = KeyProperties.KEY_ALGORITHM_AES
+            + "/" + KeyProperties.BLOCK_MODE_CBC
+            + "/" + KeyProperties.ENCRYPTION_PADDING_PKCS7;
 
     private KeyguardManager mKeyguardManager;
     private FingerprintManager mFingerprintManager;
     private CancellationSignal mCancellationSignal;
     private KeyStore mKeyStore;
     private KeyGenerator mKeyGenerator;
-    private Cipher mCipher;
+
+    // Key generation and cipher initialization in Keystore can take a noticeable time, especially on devices
+    // with hardware-backed Keystore. The key is kept across attempts, and the cipher for the next attempt is
+    // initialized in the background, so that the fingerprint prompt appears without delay.
+    // Keystore is accessed only from the thread of mExecutor, and the UI thread never waits for it:
+    // authentication starts on the UI thread (via mHandler) once the cipher is ready.
+    private final ExecutorService mExecutor = Executors.newSingleThreadExecutor();
+    private final Handler mHandler = new Handler(Looper.getMainLooper());
+    private Future<Cipher> mPreparedCipher;
+    // Set by close(). The callback of the authentication canceled by close() must not prepare another cipher.
+    private boolean mClosed = false;
 
     public FingerprintAuthentication(Context context) {
         mKeyguardManager = (KeyguardManager) context.getSystemService(Context.KEYGUARD_SERVICE);
         mFingerprintManager = (FingerprintManager) context.getSystemService(Context.FINGERPRINT_SERVICE);
+        try {
+            // *** POINT 2 ***  Obtain an instance from the "AndroidKeyStore" Provider
+            mKeyStore = KeyStore.getInstance(PROVIDER_NAME);
+            mKeyGenerator = KeyGenerator.getInstance(KeyProperties.KEY_ALGORITHM_AES, PROVIDER_NAME);
+        } catch (KeyStoreException | NoSuchAlgorithmException | NoSuchProviderException e) {
+            throw new RuntimeException("failed to get cipher instances", e);
+        }
         reset();
     }
 
+    // Start authentication as soon as the cipher is ready. Return false if this object has been closed.
+    // Must be called on the UI thread. The results, including failures to prepare the cipher, are reported to callback.
     public boolean startAuthentication(final FingerprintManager.AuthenticationCallback callback) {
-        if (!generateAndStoreKey())
+        if (mClosed)
             return false;
 
-        if (!initializeCipherObject())
-            return false;
+        final CancellationSignal cancellationSignal = new CancellationSignal();
+        mCancellationSignal = cancellationSignal;
+        final Future<Cipher> prepared = mPreparedCipher;
+        mPreparedCipher = null;
+
+        mExecutor.execute(new Runnable() {
+            @Override
+            public void run() {
+                Cipher cipher = null;
+                try {
+                    cipher = takePreparedCipher(prepared);
+                } catch (RuntimeException e) {
+                    // Reported as an error below, on the UI thread.
+                }
+                final Cipher ready = cipher;
+                mHandler.post(new Runnable() {
+                    @Override
+                    public void run() {
+                        authenticate(ready, cancellationSignal, callback);
+                    }
+                });
+            }
+        });
+        return true;
+    }
 
-        FingerprintManager.CryptoObject cryptoObject = new FingerprintManager.CryptoObject(mCipher);
+    // Called on the UI thread when the cipher is ready, or is null if it could not be prepared.
+    private void authenticate(Cipher cipher, CancellationSignal cancellationSignal,
+                              final FingerprintManager.AuthenticationCallback callback) {
+        if (mClosed)
+            return;
+        if (cancellationSignal.isCanceled()) {
+            // Canceled before the authentication started
+            if (callback != null)
+                callback.onAuthenticationError(FingerprintManager.FINGERPRINT_ERROR_CANCELED, "Fingerprint operation canceled.");
+            reset();
+            return;
+        }
+        if (cipher == null) {
+            if (callback != null)
+                callback.onAuthenticationError(FingerprintManager.FINGERPRINT_ERROR_UNABLE_TO_PROCESS, "Failed to prepare Cipher.");
+            reset();
+            return;
+        }
 
-        mCancellationSignal = new CancellationSignal();
+        FingerprintManager.CryptoObject cryptoObject = new FingerprintManager.CryptoObject(cipher);
 
         // Callback to receive the results of fingerprint authentication
         FingerprintManager.AuthenticationCallback hook = new FingerprintManager.AuthenticationCallback() {
@@ -80,9 +146,7 @@ public class FingerprintAuthentication {
         };
 
         // Execute fingerprint authentication
-        mFingerprintManager.authenticate(cryptoObject, mCancellationSignal, 0, hook, null);
-
-        return true;
+        mFingerprintManager.authenticate(cryptoObject, cancellationSignal, 0, hook, null);
     }
 
     public boolean isAuthenticating() {
@@ -96,19 +160,46 @@ public class FingerprintAuthentication {
         }
     }
 
+    // Stop authentication and the background thread. This object must not be used after this.
+    public void close() {
+        mClosed = true;
+        cancel();
+        mExecutor.shutdownNow();
+    }
+
     private void reset() {
-        try {
-            // *** POINT 2 ***  Obtain an instance from the "AndroidKeyStore" Provider
-            mKeyStore = KeyStore.getInstance(PROVIDER_NAME);
-            mKeyGenerator = KeyGenerator.getInstance(KeyProperties.KEY_ALGORITHM_AES, PROVIDER_NAME);
-            mCipher = Cipher.getInstance(KeyProperties.KEY_ALGORITHM_AES
-                    + "/" + KeyProperties.BLOCK_MODE_CBC
-                    + "/" + KeyProperties.ENCRYPTION_PADDING_PKCS7);
-        } catch (KeyStoreException | NoSuchPaddingException
-                | NoSuchAlgorithmException | NoSuchProviderException e) {
-            throw new RuntimeException("failed to get cipher instances", e);
-        }
         mCancellationSignal = null;
+        if (mClosed)
+            return;
+        // A cipher can be used for only one authentication, so prepare the one for the next attempt.
+        mPreparedCipher = mExecutor.submit(new Callable<Cipher>() {
+            @Override
+            public Cipher call() {
+                return createCipher();
+            }
+        });
+    }
+
+    // Called on the thread of mExecutor, after prepared has been done.
+    // Return the cipher prepared in the background. If it could not be prepared
+    // (e.g. no fingerprint had been registered then), try once more.
+    private Cipher takePreparedCipher(Future<Cipher> prepared) {
+        Cipher cipher = null;
+        if (prepared != null) {
+            try {
+                cipher = prepared.get();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return null;
+            } catch (ExecutionException e) {
+                if (e.getCause() instanceof RuntimeException)
+                    throw (RuntimeException) e.getCause();
+                throw new RuntimeException("failed to prepare Cipher", e.getCause());
+            }
+        }
+        if (cipher == null)
+            cipher = createCipher();
+        return cipher;
     }
 
     public boolean isFingerprintAuthAvailable() {
@@ -120,11 +211,36 @@ public class FingerprintAuthentication {
         return mFingerprintManager.isHardwareDetected();
     }
 
-    private boolean generateAndStoreKey() {
+    // Return a cipher initialized with the key in Keystore, generating the key only if it does not exist
+    // or has been invalidated. Return null if the key can not be generated (e.g. no fingerprint is registered).
+    private Cipher createCipher() {
+        // Keys requiring user authentication can not be generated before a fingerprint is registered.
+        if (!isFingerprintAuthAvailable())
+            return null;
+
         try {
             mKeyStore.load(null);
-            if (mKeyStore.containsAlias(KEY_NAME))
-                mKeyStore.deleteEntry(KEY_NAME);
+            if (!mKeyStore.containsAlias(KEY_NAME) && !generateAndStoreKey())
+                return null;
+
+            Cipher cipher = Cipher.getInstance(TRANSFORMATION);
+            if (initializeCipherObject(cipher))
+                return cipher;
+
+            // *** POINT 6 *** Design your app on the assumption that the status of fingerprint registration will change between when keys are created and when keys are used
+            // The key has been invalidated (e.g. a fingerprint has been added or removed). Replace it with a new key.
+            mKeyStore.deleteEntry(KEY_NAME);
+            if (!generateAndStoreKey())
+                return null;
+            return initializeCipherObject(cipher) ? cipher : null;
+        } catch (KeyStoreException | CertificateException | IOException
+                | NoSuchAlgorithmException | NoSuchPaddingException e) {
+            throw new RuntimeException("failed to init Cipher", e);
+        }
+    }
+
+    private boolean generateAndStoreKey() {
+        try {
             mKeyGenerator.init(
                     // *** POINT 4 *** When creating (registering) keys, use an encryption algorithm that is not vulnerable (meets standards)
                     new KeyGenParameterSpec.Builder(KEY_NAME, KeyProperties.PURPOSE_ENCRYPT)
@@ -138,26 +254,24 @@ public class FingerprintAuthentication {
             return true;
         } catch (IllegalStateException e) {
             return false;
-        } catch (NoSuchAlgorithmException | InvalidAlgorithmParameterException
-                | CertificateException | KeyStoreException | IOException e) {
+        } catch (InvalidAlgorithmParameterException e) {
             throw new RuntimeException("failed to generate a key", e);
         }
     }
 
-    private boolean initializeCipherObject() {
+    // Return false if the key has been invalidated or removed.
+    private boolean initializeCipherObject(Cipher cipher) {
         try {
-            mKeyStore.load(null);
             SecretKey key = (SecretKey) mKeyStore.getKey(KEY_NAME, null);
-            SecretKeyFactory factory = SecretKeyFactory.getInstance(KeyProperties.KEY_ALGORITHM_AES, PROVIDER_NAME);
-            KeyInfo info = (KeyInfo) factory.getKeySpec(key, KeyInfo.class);
+            if (key == null)
+                return false;
 
-            mCipher.init(Cipher.ENCRYPT_MODE, key);
+            cipher.init(Cipher.ENCRYPT_MODE, key);
             return true;
         } catch (KeyPermanentlyInvalidatedException e) {
             // *** POINT 6 *** Design your app on the assumption that the status of fingerprint registration will change between when keys are created and when keys are used
             return false;
-        } catch (KeyStoreException | CertificateException | UnrecoverableKeyException | IOException
-                | NoSuchAlgorithmException | InvalidKeySpecException | NoSuchProviderException | InvalidKeyException e) {
+        } catch (KeyStoreException | UnrecoverableKeyException | NoSuchAlgorithmException | InvalidKeyException e) {
             throw new RuntimeException("failed to init Cipher", e);
         }
     }
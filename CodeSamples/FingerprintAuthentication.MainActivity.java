@@ -44,6 +44,12 @@ public class MainActivity extends AppCompatActivity {
         });
     }
 
+    @Override
+    protected void onDestroy() {
+        mFingerprintAuthentication.close();
+        super.onDestroy();
+    }
+
     private boolean authenticateByFingerprint() {
 
         if (!mFingerprintAuthentication.isFingerprintHardwareDetected()) {
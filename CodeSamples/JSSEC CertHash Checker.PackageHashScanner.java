@@ -0,0 +1,198 @@
+package org.jssec.android.certhashchecker;
+
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+
+import org.jssec.android.shared.HexCodec;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+import android.content.pm.PackageInfo;
+import android.content.pm.PackageManager;
+import android.content.pm.PackageManager.NameNotFoundException;
+import android.content.pm.Signature;
+import android.os.Handler;
+import android.os.Looper;
+
+// Compute certificate hash values of installed packages on worker threads.
+// The scan itself runs on its own thread, which submits the packages and delivers each result as soon as it is ready.
+// Hash values are kept in a private preference file with the install/update time of each package,
+// so that only new or updated packages are hashed again on the next launch.
+public class PackageHashScanner {
+
+    public interface Listener {
+        // Called on the main thread for each package, in the order in which the packages have been scanned.
+        void onPackageScanned(String appname, String pkgname, String pkghash);
+    }
+
+    private static final String CACHE_NAME = "pkghash";
+    private static final int MAX_THREADS = 4;
+
+    private final Context mContext;
+    private final Handler mHandler = new Handler(Looper.getMainLooper());
+    private ExecutorService mExecutor = null;
+    private Thread mThread = null;
+    private volatile boolean mCancelled = false;
+
+    private static final class Result {
+        final String appname;
+        final String pkgname;
+        final String pkghash;
+
+        Result(String appname, String pkgname, String pkghash) {
+            this.appname = appname;
+            this.pkgname = pkgname;
+            this.pkghash = pkghash;
+        }
+    }
+
+    public PackageHashScanner(Context context) {
+        mContext = context.getApplicationContext();
+    }
+
+    public void start(final Listener listener) {
+        int threads = Math.max(1, Math.min(MAX_THREADS, Runtime.getRuntime().availableProcessors()));
+        final ExecutorService executor = Executors.newFixedThreadPool(threads);
+        mExecutor = executor;
+        mCancelled = false;
+        mThread = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    scanAll(executor, listener);
+                } finally {
+                    executor.shutdown();
+                }
+            }
+        }, "PackageHashScanner");
+        mThread.start();
+    }
+
+    public void cancel() {
+        mCancelled = true;
+        if (mExecutor != null) mExecutor.shutdownNow();
+        // Wake up the scan thread if it is waiting for a result
+        if (mThread != null) mThread.interrupt();
+    }
+
+    private void scanAll(final ExecutorService executor, final Listener listener) {
+        final String mypkgname = mContext.getPackageName();
+        final PackageManager pm = mContext.getPackageManager();
+        final SharedPreferences cache = mContext.getSharedPreferences(CACHE_NAME, Context.MODE_PRIVATE);
+        final Map<String, ?> cached = cache.getAll();
+        // Cache entries to be written when the scan finishes: those of packages still installed.
+        final Map<String, String> entries = new ConcurrentHashMap<String, String>();
+
+        List<PackageInfo> pkgs = pm.getInstalledPackages(0);
+        CompletionService<Result> results = new ExecutorCompletionService<Result>(executor);
+        int submitted = 0;
+        try {
+            for (final PackageInfo pkg : pkgs) {
+                if (!isTarget(pkg.packageName, mypkgname)) continue;
+                if (mCancelled) return;
+                results.submit(new Callable<Result>() {
+                    @Override
+                    public Result call() {
+                        final String pkgname = pkg.packageName;
+                        final String appname = pkg.applicationInfo.loadLabel(pm).toString();
+                        // The hash value is reused only if the package has not been reinstalled or updated since.
+                        String stamp = pkg.firstInstallTime + ":" + pkg.lastUpdateTime + ":";
+                        Object entry = cached.get(pkgname);
+                        String pkghash;
+                        if (entry instanceof String && ((String) entry).startsWith(stamp)) {
+                            pkghash = ((String) entry).substring(stamp.length());
+                            entries.put(pkgname, (String) entry);
+                        } else {
+                            pkghash = packageHash(pm, pkgname);
+                            if (pkghash != null) entries.put(pkgname, stamp + pkghash);
+                        }
+                        return new Result(appname, pkgname, (pkghash != null) ? pkghash : errorMessage(pm, pkgname));
+                    }
+                });
+                submitted++;
+            }
+
+            // Deliver the results in the order of completion, so that a slow package does not hold back the others.
+            for (int i = 0; i < submitted; i++) {
+                final Result result;
+                try {
+                    result = results.take().get();
+                } catch (ExecutionException e) {
+                    // Skip the package which could not be scanned
+                    continue;
+                }
+                mHandler.post(new Runnable() {
+                    @Override
+                    public void run() {
+                        if (!mCancelled) listener.onPackageScanned(result.appname, result.pkgname, result.pkghash);
+                    }
+                });
+            }
+        } catch (RejectedExecutionException e) {
+            // Cancelled while submitting
+            return;
+        } catch (InterruptedException e) {
+            // Cancelled while waiting for a result
+            return;
+        }
+        finish(cache, entries);
+    }
+
+    private static boolean isTarget(String pkgname, String mypkgname) {
+        if (mypkgname.equals(pkgname)) return false;
+        if (pkgname.startsWith("com.android.")) return false;
+        if (pkgname.startsWith("com.google.")) return false;
+        return true;
+    }
+
+    private void finish(SharedPreferences cache, Map<String, String> entries) {
+        if (mCancelled) return;
+        // Rewrite the cache at once, which also drops entries of uninstalled packages.
+        SharedPreferences.Editor editor = cache.edit().clear();
+        for (Map.Entry<String, String> e : entries.entrySet()) {
+            editor.putString(e.getKey(), e.getValue());
+        }
+        editor.apply();
+    }
+
+    // Return the certificate hash value of pkgname, or null if it can not be computed.
+    private static String packageHash(PackageManager pm, String pkgname) {
+        try {
+            PackageInfo pkginfo = pm.getPackageInfo(pkgname, PackageManager.GET_SIGNATURES);
+            if (pkginfo.signatures.length != 1) return null;
+            Signature sig = pkginfo.signatures[0];
+            byte[] cert = sig.toByteArray();
+            byte[] sha256 = computeSha256(cert);
+            return HexCodec.encode(sha256, 4);
+        } catch (NameNotFoundException e) {
+            return null;
+        }
+    }
+
+    private static String errorMessage(PackageManager pm, String pkgname) {
+        try {
+            PackageInfo pkginfo = pm.getPackageInfo(pkgname, PackageManager.GET_SIGNATURES);
+            return String.format("not single, %d signatures.", pkginfo.signatures.length);
+        } catch (NameNotFoundException e) {
+            return String.format("exception: %s", e.getMessage());
+        }
+    }
+
+    private static byte[] computeSha256(byte[] data) {
+        try {
+            return MessageDigest.getInstance("SHA-256").digest(data);
+        } catch (NoSuchAlgorithmException e) {
+            return null;
+        }
+    }
+}
@@ -0,0 +1,80 @@
+package org.jssec.android.shared;
+
+import java.util.Iterator;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import android.content.Context;
+import android.os.SystemClock;
+
+public class CallerVerdictCache {
+
+    public interface Verifier {
+        // Verify the calling application pkgname. Called on the Binder thread of the request.
+        boolean verify(Context ctx, String pkgname);
+    }
+
+    // Only positive verdicts are kept, per calling UID and package name. They are discarded on every package change
+    // reported by PkgChangeMonitor, so a hit costs a map lookup only, with no IPC to the package manager.
+    // Certificate hash values behind the verdicts are cached by PkgCert, which is invalidated the same way.
+    // Negative verdicts are not kept, so that an application is never refused because of another one.
+    private final ConcurrentHashMap<String, Long> mAllowed = new ConcurrentHashMap<String, Long>();
+    private final long mTtlMillis;
+    private final int mMaxEntries;
+    private volatile boolean mEnabled = false;
+    // Incremented on every package change, so that a verdict made before the change is not cached after it.
+    private final AtomicInteger mGeneration = new AtomicInteger();
+
+    // Verdicts are also discarded on package changes. Changes are rare, so all of them are discarded.
+    private final PkgChangeMonitor.Listener mInvalidator = new PkgChangeMonitor.Listener() {
+        @Override
+        public void onPackageChanged(String pkgname, int uid) {
+            mGeneration.incrementAndGet();
+            mAllowed.clear();
+        }
+    };
+
+    public CallerVerdictCache(long ttlMillis, int maxEntries) {
+        mTtlMillis = ttlMillis;
+        mMaxEntries = maxEntries;
+    }
+
+    // Return true if the application pkgname calling with uid is allowed by verifier.
+    public boolean test(Context ctx, int uid, String pkgname, Verifier verifier) {
+        if (pkgname == null) return false;
+        if (!mEnabled) {
+            // Cache can be used only while package changes are monitored.
+            mEnabled = PkgChangeMonitor.register(ctx, mInvalidator);
+        }
+        long now = SystemClock.elapsedRealtime();
+        String key = mEnabled ? uid + "/" + pkgname : null;
+        if (key != null) {
+            Long expiry = mAllowed.get(key);
+            if (expiry != null && now < expiry) return true;
+        }
+
+        int generation = mGeneration.get();
+        boolean allowed = verifier.verify(ctx, pkgname);
+        if (allowed && key != null) {
+            if (mAllowed.size() >= mMaxEntries) evict(now);
+            Long expiry = now + mTtlMillis;
+            mAllowed.put(key, expiry);
+            // Discard the verdict if a package may have changed while verifying.
+            if (mGeneration.get() != generation) mAllowed.remove(key, expiry);
+        }
+        return allowed;
+    }
+
+    public void clear() {
+        mAllowed.clear();
+    }
+
+    private void evict(long now) {
+        Iterator<Long> it = mAllowed.values().iterator();
+        while (it.hasNext()) {
+            if (it.next() <= now) it.remove();
+        }
+        // Still full of valid verdicts: start over rather than growing without bound.
+        if (mAllowed.size() >= mMaxEntries) mAllowed.clear();
+    }
+}
@@ -0,0 +1,90 @@
+package org.jssec.android.shared;
+
+import java.nio.ByteBuffer;
+import java.security.SecureRandom;
+import java.util.Arrays;
+
+// Random bytes for salts, IVs, nonces and tokens.
+// Constructing a SecureRandom may seed it from the system, and SecureRandom serializes callers with a lock,
+// so each thread keeps one seeded instance and takes small requests from a buffer refilled in blocks.
+// Bytes are cleared from the buffer as soon as they are handed out.
+public final class RandomBytes {
+
+    // Size of the buffer refilled at once. Larger requests are served by the SecureRandom directly.
+    private static final int POOL_BYTES = 256;
+
+    private static final class Pool {
+        private final SecureRandom mRandom = new SecureRandom();
+        private final byte[] mBuffer = new byte[POOL_BYTES];
+        private int mPosition = POOL_BYTES;
+
+        Pool() {
+            // Seed now rather than on the first request.
+            mRandom.nextBytes(mBuffer);
+            mPosition = 0;
+        }
+
+        void nextBytes(final byte[] out, final int offset, final int length) {
+            if (length > POOL_BYTES) {
+                if (offset == 0 && length == out.length) {
+                    mRandom.nextBytes(out);
+                } else {
+                    byte[] bytes = new byte[length];
+                    mRandom.nextBytes(bytes);
+                    System.arraycopy(bytes, 0, out, offset, length);
+                    Arrays.fill(bytes, (byte) 0);
+                }
+                return;
+            }
+            if (POOL_BYTES - mPosition < length) {
+                mRandom.nextBytes(mBuffer);
+                mPosition = 0;
+            }
+            System.arraycopy(mBuffer, mPosition, out, offset, length);
+            Arrays.fill(mBuffer, mPosition, mPosition + length, (byte) 0);
+            mPosition += length;
+        }
+    }
+
+    private static final ThreadLocal<Pool> sPool = new ThreadLocal<Pool>() {
+        @Override
+        protected Pool initialValue() {
+            return new Pool();
+        }
+    };
+
+    private RandomBytes() {
+    }
+
+    public static void nextBytes(final byte[] out) {
+        sPool.get().nextBytes(out, 0, out.length);
+    }
+
+    public static byte[] nextBytes(final int length) {
+        byte[] bytes = new byte[length];
+        nextBytes(bytes);
+        return bytes;
+    }
+
+    // Fill the remaining bytes of out, e.g. IVs for many records at once. The position of out is advanced to its limit.
+    public static void nextBytes(final ByteBuffer out) {
+        Pool pool = sPool.get();
+        if (out.hasArray()) {
+            pool.nextBytes(out.array(), out.arrayOffset() + out.position(), out.remaining());
+            out.position(out.limit());
+            return;
+        }
+        byte[] chunk = new byte[Math.min(out.remaining(), POOL_BYTES)];
+        while (out.hasRemaining()) {
+            int length = Math.min(out.remaining(), chunk.length);
+            pool.nextBytes(chunk, 0, length);
+            out.put(chunk, 0, length);
+        }
+        Arrays.fill(chunk, (byte) 0);
+    }
+
+    // Prepare the SecureRandom of the calling thread, e.g. on a worker thread before it generates keys.
+    public static void warmUp() {
+        sPool.get();
+    }
+}
@@ -0,0 +1,79 @@
+package org.jssec.android.shared;
+
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+
+import android.app.Activity;
+import android.app.ActivityManager;
+import android.app.ActivityManager.RunningAppProcessInfo;
+import android.content.Context;
+
+public class PidPackageResolver {
+
+    // The index is cleared when it grows beyond this, rather than growing without bound.
+    private static final int MAX_ENTRIES = 256;
+
+    private static final class Entry {
+        final int uid;
+        final String[] packages;
+
+        Entry(int uid, String[] packages) {
+            this.uid = uid;
+            this.packages = packages;
+        }
+    }
+
+    // Packages running in each process, by pid. An entry is added when a pid is looked up for the first time,
+    // and is used only for the UID it was added with, so that a pid reused by another application is looked up again.
+    // All entries are discarded on package changes, so that they are not used for an application
+    // installed afterwards with the same UID.
+    private static final ConcurrentHashMap<Integer, Entry> sIndex = new ConcurrentHashMap<Integer, Entry>();
+    private static volatile boolean sIndexEnabled = false;
+
+    private static final PkgChangeMonitor.Listener sInvalidator = new PkgChangeMonitor.Listener() {
+        @Override
+        public void onPackageChanged(String pkgname, int uid) {
+            sIndex.clear();
+        }
+    };
+
+    // Return the packages running in the process pid, or null if not found.
+    // uid is the UID which the process must have (e.g. Binder.getCallingUid()). Packages of a dead process
+    // whose pid has been reused by another application are never returned.
+    public static String[] getPackages(Context ctx, int pid, int uid) {
+        if (uid < 0) return null;
+        if (!sIndexEnabled) {
+            // Index can be used only while package changes are monitored.
+            sIndexEnabled = PkgChangeMonitor.register(ctx, sInvalidator);
+        }
+        if (sIndexEnabled) {
+            Entry entry = sIndex.get(pid);
+            if (entry != null && entry.uid == uid) return entry.packages;
+        }
+
+        String[] packages = lookUp(ctx, pid, uid);
+        if (sIndexEnabled && packages != null) {
+            if (sIndex.size() >= MAX_ENTRIES) sIndex.clear();
+            sIndex.put(pid, new Entry(uid, packages));
+        }
+        return packages;
+    }
+
+    private static String[] lookUp(Context ctx, int pid, int uid) {
+        // An application which does not share its UID runs only its own package:
+        // only that UID is looked up, not all the running processes.
+        String[] packages = ctx.getPackageManager().getPackagesForUid(uid);
+        if (packages != null && packages.length == 1) return packages;
+
+        // Shared or isolated UID: look for the process itself.
+        ActivityManager am = (ActivityManager) ctx.getSystemService(Activity.ACTIVITY_SERVICE);
+        List<RunningAppProcessInfo> processes = am.getRunningAppProcesses();
+        if (processes == null) return null;
+        for (RunningAppProcessInfo info : processes) {
+            if (info.pid == pid) {
+                return (info.uid == uid && info.pkgList != null && info.pkgList.length > 0) ? info.pkgList : null;
+            }
+        }
+        return null;
+    }
+}
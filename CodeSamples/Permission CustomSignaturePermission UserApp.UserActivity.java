@@ -1,5 +1,6 @@
 package org.jssec.android.permission.userapp;
 
+import org.jssec.android.shared.LazyHolder;
 import org.jssec.android.shared.PkgCert;
 import org.jssec.android.shared.SigPerm;
 import org.jssec.android.shared.Utils;
@@ -21,18 +22,20 @@ public class UserActivity extends Activity {
     private static final String MY_PERMISSION = "org.jssec.android.permission.protectedapp.MY_PERMISSION";
 
     // Hash value of in-house certificate
-    private static String sMyCertHash = null;
-    private static String myCertHash(Context context) {
-        if (sMyCertHash == null) {
+    private static final LazyHolder<String> sMyCertHash = new LazyHolder<String>() {
+        @Override
+        protected String create(Context context) {
             if (Utils.isDebuggable(context)) {
                 // Certificate hash value of "androiddebugkey" of debug.keystore.
-                sMyCertHash = "0EFB7236 328348A9 89718BAD DF57F544 D5CCB4AE B9DB34BC 1E29DD26 F77C8255";
+                return "0EFB7236 328348A9 89718BAD DF57F544 D5CCB4AE B9DB34BC 1E29DD26 F77C8255";
             } else {
                 // Certificate hash value of "my company key" of keystore.
-                sMyCertHash = "D397D343 A5CBC10F 4EDDEB7C A10062DE 5690984F 1FB9E88B D7B3A7C2 42E142CA";
+                return "D397D343 A5CBC10F 4EDDEB7C A10062DE 5690984F 1FB9E88B D7B3A7C2 42E142CA";
             }
         }
-        return sMyCertHash;
+    };
+    private static String myCertHash(Context context) {
+        return sMyCertHash.get(context);
     }
 
     @Override
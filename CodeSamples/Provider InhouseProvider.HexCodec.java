@@ -0,0 +1,99 @@
+package org.jssec.android.shared;
+
+import java.nio.ByteBuffer;
+
+// Conversion between bytes and hex strings by lookup tables.
+// Results can be written into char[] or ByteBuffer given by the caller, so that no intermediate String is needed.
+public final class HexCodec {
+
+    private static final char[] DIGITS = "0123456789ABCDEF".toCharArray();
+
+    // Value of each hex digit character (both upper and lower case), or -1 for other characters.
+    private static final byte[] VALUES = new byte[128];
+    static {
+        for (int i = 0; i < VALUES.length; i++) VALUES[i] = -1;
+        for (int i = 0; i < 10; i++) VALUES['0' + i] = (byte) i;
+        for (int i = 0; i < 6; i++) {
+            VALUES['A' + i] = (byte) (10 + i);
+            VALUES['a' + i] = (byte) (10 + i);
+        }
+    }
+
+    private HexCodec() {
+    }
+
+    // Number of characters needed to encode len bytes.
+    // If group is positive, a space is put between every group bytes (e.g. group = 4 -> "0EFB7236 328348A9 ...").
+    public static int encodedLength(int len, int group) {
+        if (len <= 0) return 0;
+        int spaces = (group > 0) ? (len - 1) / group : 0;
+        return len * 2 + spaces;
+    }
+
+    // Encode len bytes of src from srcOff into dst from dstOff. Return the number of characters written.
+    public static int encode(byte[] src, int srcOff, int len, char[] dst, int dstOff, int group) {
+        int p = dstOff;
+        for (int i = 0; i < len; i++) {
+            if (group > 0 && i > 0 && i % group == 0) dst[p++] = ' ';
+            int b = src[srcOff + i];
+            dst[p++] = DIGITS[(b >> 4) & 15];
+            dst[p++] = DIGITS[b & 15];
+        }
+        return p - dstOff;
+    }
+
+    public static String encode(byte[] data) {
+        return encode(data, 0);
+    }
+
+    public static String encode(byte[] data, int group) {
+        if (data == null) return null;
+        char[] chars = new char[encodedLength(data.length, group)];
+        encode(data, 0, data.length, chars, 0, group);
+        return new String(chars);
+    }
+
+    // Decode hex digits of src into dst. Spaces are ignored.
+    // Return the number of bytes written, or -1 (and nothing is written) if src is not a valid hex string
+    // or dst does not have enough space.
+    public static int decode(CharSequence src, ByteBuffer dst) {
+        int digits = countDigits(src);
+        if (digits < 0 || digits % 2 != 0) return -1;
+        if (dst.remaining() < digits / 2) return -1;
+
+        int high = -1;
+        for (int i = 0; i < src.length(); i++) {
+            char c = src.charAt(i);
+            if (c == ' ') continue;
+            if (high < 0) {
+                high = VALUES[c];
+            } else {
+                dst.put((byte) ((high << 4) | VALUES[c]));
+                high = -1;
+            }
+        }
+        return digits / 2;
+    }
+
+    // Decode hex digits of src. Spaces are ignored. Return null if src is not a valid hex string.
+    public static byte[] decode(CharSequence src) {
+        if (src == null) return null;
+        int digits = countDigits(src);
+        if (digits < 0 || digits % 2 != 0) return null;
+        byte[] data = new byte[digits / 2];
+        decode(src, ByteBuffer.wrap(data));
+        return data;
+    }
+
+    // Return the number of hex digits in src, or -1 if src has any character other than hex digits and spaces.
+    private static int countDigits(CharSequence src) {
+        int digits = 0;
+        for (int i = 0; i < src.length(); i++) {
+            char c = src.charAt(i);
+            if (c == ' ') continue;
+            if (c >= VALUES.length || VALUES[c] < 0) return -1;
+            digits++;
+        }
+        return digits;
+    }
+}
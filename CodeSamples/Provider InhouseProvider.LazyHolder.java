@@ -0,0 +1,25 @@
+package org.jssec.android.shared;
+
+import android.content.Context;
+
+// Holds a value which is created on first use, such as a certificate hash value or a whitelist.
+// The value is created only once even when several threads (e.g. Binder threads) need it at the same time.
+public abstract class LazyHolder<T> {
+    private volatile T mValue = null;
+
+    protected abstract T create(Context context);
+
+    public T get(Context context) {
+        T value = mValue;
+        if (value == null) {
+            synchronized (this) {
+                value = mValue;
+                if (value == null) {
+                    value = create(context);
+                    mValue = value;
+                }
+            }
+        }
+        return value;
+    }
+}
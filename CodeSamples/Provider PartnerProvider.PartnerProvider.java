@@ -1,12 +1,11 @@
 package org.jssec.android.provider.partnerprovider;
 
-import java.util.List;
-
+import org.jssec.android.shared.CallerVerdictCache;
+import org.jssec.android.shared.LazyHolder;
+import org.jssec.android.shared.PidPackageResolver;
 import org.jssec.android.shared.PkgCertWhitelists;
 import org.jssec.android.shared.Utils;
 
-import android.app.ActivityManager;
-import android.app.ActivityManager.RunningAppProcessInfo;
 import android.content.ContentProvider;
 import android.content.ContentUris;
 import android.content.ContentValues;
@@ -62,24 +61,52 @@ public class PartnerProvider extends ContentProvider {
         sDownloadCursor.addRow(new String[] { "2", "/sdcard/downloads/sample.txt" });
     }
 
+    // Certificate hash values of the partner application, as binary constants: nothing is parsed at run time.
+    // Certificate hash value of "androiddebugkey" in the debug.keystore.
+    // 0EFB7236 328348A9 89718BAD DF57F544 D5CCB4AE B9DB34BC 1E29DD26 F77C8255
+    private static final byte[] PARTNER_DEBUG_CERT_HASH = {
+        (byte) 0x0E, (byte) 0xFB, (byte) 0x72, (byte) 0x36, (byte) 0x32, (byte) 0x83, (byte) 0x48, (byte) 0xA9,
+        (byte) 0x89, (byte) 0x71, (byte) 0x8B, (byte) 0xAD, (byte) 0xDF, (byte) 0x57, (byte) 0xF5, (byte) 0x44,
+        (byte) 0xD5, (byte) 0xCC, (byte) 0xB4, (byte) 0xAE, (byte) 0xB9, (byte) 0xDB, (byte) 0x34, (byte) 0xBC,
+        (byte) 0x1E, (byte) 0x29, (byte) 0xDD, (byte) 0x26, (byte) 0xF7, (byte) 0x7C, (byte) 0x82, (byte) 0x55
+    };
+    // Certificate hash value of "partner key" in the keystore.
+    // 1F039BB5 7861C27A 3916C778 8E78CE00 690B3974 3EB8259F E2627B8D 4C0EC35A
+    private static final byte[] PARTNER_CERT_HASH = {
+        (byte) 0x1F, (byte) 0x03, (byte) 0x9B, (byte) 0xB5, (byte) 0x78, (byte) 0x61, (byte) 0xC2, (byte) 0x7A,
+        (byte) 0x39, (byte) 0x16, (byte) 0xC7, (byte) 0x78, (byte) 0x8E, (byte) 0x78, (byte) 0xCE, (byte) 0x00,
+        (byte) 0x69, (byte) 0x0B, (byte) 0x39, (byte) 0x74, (byte) 0x3E, (byte) 0xB8, (byte) 0x25, (byte) 0x9F,
+        (byte) 0xE2, (byte) 0x62, (byte) 0x7B, (byte) 0x8D, (byte) 0x4C, (byte) 0x0E, (byte) 0xC3, (byte) 0x5A
+    };
+
     // *** POINT 2 *** Verify if the certificate of a requesting application has been registered in the own white list.
-    private static PkgCertWhitelists sWhitelists = null;
-    private static void buildWhitelists(Context context) {
-        boolean isdebug = Utils.isDebuggable(context);
-        sWhitelists = new PkgCertWhitelists();
-
-        // Register certificate hash value of partner application org.jssec.android.provider.partneruser.
-        sWhitelists.add("org.jssec.android.provider.partneruser", isdebug ?
-                // Certificate hash value of "androiddebugkey" in the debug.keystore.
-                "0EFB7236 328348A9 89718BAD DF57F544 D5CCB4AE B9DB34BC 1E29DD26 F77C8255" :
-                // Certificate hash value of "partner key" in the keystore.
-                "1F039BB5 7861C27A 3916C778 8E78CE00 690B3974 3EB8259F E2627B8D 4C0EC35A");
-
-        // Register following other partner applications in the same way.
-    }
+    private static final LazyHolder<PkgCertWhitelists> sWhitelists = new LazyHolder<PkgCertWhitelists>() {
+        @Override
+        protected PkgCertWhitelists create(Context context) {
+            boolean isdebug = Utils.isDebuggable(context);
+            PkgCertWhitelists whitelists = new PkgCertWhitelists();
+
+            // Register certificate hash value of partner application org.jssec.android.provider.partneruser.
+            whitelists.add("org.jssec.android.provider.partneruser", isdebug ? PARTNER_DEBUG_CERT_HASH : PARTNER_CERT_HASH);
+
+            // Register following other partner applications in the same way.
+            return whitelists;
+        }
+    };
     private static boolean checkPartner(Context context, String pkgname) {
-        if (sWhitelists == null) buildWhitelists(context);
-        return sWhitelists.test(context, pkgname);
+        return sWhitelists.get(context).test(context, pkgname);
+    }
+    // Positive verdicts are cached per installation of the calling application for a short while,
+    // so that a series of requests does not verify the calling application again.
+    private static final CallerVerdictCache sVerdicts = new CallerVerdictCache(10 * 1000, 32);
+    private static final CallerVerdictCache.Verifier sPartnerVerifier = new CallerVerdictCache.Verifier() {
+        @Override
+        public boolean verify(Context ctx, String pkgname) {
+            return checkPartner(ctx, pkgname);
+        }
+    };
+    private boolean isCallerPartner(Context context) {
+        return sVerdicts.test(context, Binder.getCallingUid(), getCallingPackage(context), sPartnerVerifier);
     }
     // Get the package name of the calling application.
     private String getCallingPackage(Context context) {
@@ -88,16 +115,9 @@ public class PartnerProvider extends ContentProvider {
             pkgname = super.getCallingPackage();
         } else {
             pkgname = null;
-            ActivityManager am = (ActivityManager) context.getSystemService(Context.ACTIVITY_SERVICE);
-            List<RunningAppProcessInfo> procList = am.getRunningAppProcesses();
-            int callingPid = Binder.getCallingPid();
-            if (procList != null) {
-                for (RunningAppProcessInfo proc : procList) {
-                    if (proc.pid == callingPid) {
-                        pkgname = proc.pkgList[proc.pkgList.length - 1];
-                        break;
-                    }
-                }
+            String[] pkgList = PidPackageResolver.getPackages(context, Binder.getCallingPid(), Binder.getCallingUid());
+            if (pkgList != null && pkgList.length > 0) {
+                pkgname = pkgList[pkgList.length - 1];
             }
         }
         return pkgname;
@@ -130,7 +150,7 @@ public class PartnerProvider extends ContentProvider {
             String[] selectionArgs, String sortOrder) {
 
         // *** POINT 2 *** Verify if the certificate of a requesting application has been registered in the own white list.
-        if (!checkPartner(getContext(), getCallingPackage(getContext()))) {
+        if (!isCallerPartner(getContext())) {
             throw new SecurityException("Calling application is not a partner application.");
         }
 
@@ -160,7 +180,7 @@ public class PartnerProvider extends ContentProvider {
     public Uri insert(Uri uri, ContentValues values) {
 
         // *** POINT 2 *** Verify if the certificate of a requesting application has been registered in the own white list.
-        if (!checkPartner(getContext(), getCallingPackage(getContext()))) {
+        if (!isCallerPartner(getContext())) {
             throw new SecurityException("Calling application is not a partner application.");
         }
 
@@ -189,7 +209,7 @@ public class PartnerProvider extends ContentProvider {
             String[] selectionArgs) {
 
         // *** POINT 2 *** Verify if the certificate of a requesting application has been registered in the own white list.
-        if (!checkPartner(getContext(), getCallingPackage(getContext()))) {
+        if (!isCallerPartner(getContext())) {
             throw new SecurityException("Calling application is not a partner application.");
         }
 
@@ -223,7 +243,7 @@ public class PartnerProvider extends ContentProvider {
     public int delete(Uri uri, String selection, String[] selectionArgs) {
 
         // *** POINT 2 *** Verify if the certificate of a requesting application has been registered in the own white list.
-        if (!checkPartner(getContext(), getCallingPackage(getContext()))) {
+        if (!isCallerPartner(getContext())) {
             throw new SecurityException("Calling application is not a partner application.");
         }
 
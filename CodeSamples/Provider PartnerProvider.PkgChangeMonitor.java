@@ -0,0 +1,60 @@
+package org.jssec.android.shared;
+
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import android.content.BroadcastReceiver;
+import android.content.Context;
+import android.content.Intent;
+import android.content.IntentFilter;
+import android.net.Uri;
+
+public class PkgChangeMonitor {
+
+    public interface Listener {
+        // Called when the package named pkgname (application uid is uid) is installed, updated or removed.
+        // pkgname may be null and uid may be -1 if the broadcast does not carry them.
+        void onPackageChanged(String pkgname, int uid);
+    }
+
+    private static final CopyOnWriteArrayList<Listener> sListeners = new CopyOnWriteArrayList<Listener>();
+    private static BroadcastReceiver sReceiver = null;
+
+    // Register listener and start monitoring package changes, if not started yet.
+    // Returns false if package changes can not be monitored. In that case, callers must not rely on
+    // cached information about other packages.
+    public static synchronized boolean register(Context ctx, Listener listener) {
+        if (sReceiver == null) {
+            BroadcastReceiver receiver = new BroadcastReceiver() {
+                @Override
+                public void onReceive(Context context, Intent intent) {
+                    Uri data = intent.getData();
+                    String pkgname = (data != null) ? data.getSchemeSpecificPart() : null;
+                    int uid = intent.getIntExtra(Intent.EXTRA_UID, -1);
+                    for (Listener l : sListeners) {
+                        l.onPackageChanged(pkgname, uid);
+                    }
+                }
+            };
+            IntentFilter filter = new IntentFilter();
+            filter.addAction(Intent.ACTION_PACKAGE_ADDED);
+            filter.addAction(Intent.ACTION_PACKAGE_REPLACED);
+            filter.addAction(Intent.ACTION_PACKAGE_CHANGED);
+            filter.addAction(Intent.ACTION_PACKAGE_REMOVED);
+            filter.addAction(Intent.ACTION_PACKAGE_FULLY_REMOVED);
+            filter.addDataScheme("package");
+            try {
+                // Register to the application context, so that the receiver lives as long as the process.
+                ctx.getApplicationContext().registerReceiver(receiver, filter);
+            } catch (RuntimeException e) {
+                return false;
+            }
+            sReceiver = receiver;
+        }
+        sListeners.addIfAbsent(listener);
+        return true;
+    }
+
+    public static void unregister(Listener listener) {
+        sListeners.remove(listener);
+    }
+}
@@ -6,26 +6,37 @@ import java.util.Map;
 import android.content.Context;
 
 public class PkgCertWhitelists {
-    private Map<String, String> mWhitelists = new HashMap<String, String>();
+    // Certificate hash values are stored as 32 bytes binary (not as hex strings),
+    // so that test() needs neither string conversion nor memory allocation.
+    private Map<String, byte[]> mWhitelists = new HashMap<String, byte[]>();
 
     public boolean add(String pkgname, String sha256) {
         if (pkgname == null) return false;
         if (sha256 == null) return false;
 
-        sha256 = sha256.replaceAll(" ", "");
-        if (sha256.length() != 64) return false;    // SHA-256 -> 32 bytes -> 64 chars
-        sha256 = sha256.toUpperCase();
-        if (sha256.replaceAll("[0-9A-F]+", "").length() != 0) return false; // found non hex char
+        byte[] digest = HexCodec.decode(sha256);
+        if (digest == null) return false;       // found non hex char
+        if (digest.length != 32) return false;  // SHA-256 -> 32 bytes -> 64 chars
 
-        mWhitelists.put(pkgname, sha256);
+        mWhitelists.put(pkgname, digest);
+        return true;
+    }
+
+    // Register a certificate hash value given as 32 bytes binary (e.g. a constant written as a byte array literal).
+    public boolean add(String pkgname, byte[] sha256) {
+        if (pkgname == null) return false;
+        if (sha256 == null) return false;
+        if (sha256.length != 32) return false;    // SHA-256 -> 32 bytes
+
+        mWhitelists.put(pkgname, sha256.clone());
         return true;
     }
 
     public boolean test(Context ctx, String pkgname) {
         // Get the correct hash value which corresponds to pkgname.
-        String correctHash = mWhitelists.get(pkgname);
+        byte[] correctDigest = mWhitelists.get(pkgname);
 
         // Compare the actual hash value of pkgname with the correct hash value.
-        return PkgCert.test(ctx, pkgname, correctHash);
+        return PkgCert.test(ctx, pkgname, correctDigest);
     }
 }
@@ -1,5 +1,8 @@
 package org.jssec.android.shared;
 
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
 import android.content.Context;
 import android.content.pm.PackageManager;
 import android.content.pm.PackageManager.NameNotFoundException;
@@ -7,27 +10,67 @@ import android.content.pm.PermissionInfo;
 
 public class SigPerm {
 
+    // Package names of the applications which declare signature permissions, per permission name.
+    // Certificate hash values themselves are cached by PkgCert.
+    // Any application may declare a permission, so all entries are discarded on every package change.
+    private static final ConcurrentHashMap<String, String> sCache = new ConcurrentHashMap<String, String>();
+    private static volatile boolean sCacheEnabled = false;
+    // Incremented on every package change, so that a declarer found before the change is not cached after it.
+    private static final AtomicInteger sGeneration = new AtomicInteger();
+
+    private static final PkgChangeMonitor.Listener sInvalidator = new PkgChangeMonitor.Listener() {
+        @Override
+        public void onPackageChanged(String pkgname, int uid) {
+            sGeneration.incrementAndGet();
+            sCache.clear();
+        }
+    };
+
     public static boolean test(Context ctx, String sigPermName, String correctHash) {
         if (correctHash == null) return false;
-        correctHash = correctHash.replaceAll(" ", "");
-        return correctHash.equals(hash(ctx, sigPermName));
+        byte[] correctDigest = HexCodec.decode(correctHash);
+        if (correctDigest == null) return false;    // found non hex char
+        // Compared in constant time by PkgCert
+        return PkgCert.test(ctx, declarer(ctx, sigPermName), correctDigest);
     }
 
     public static String hash(Context ctx, String sigPermName) {
+        return PkgCert.hash(ctx, declarer(ctx, sigPermName));
+    }
+
+    private static String declarer(Context ctx, String sigPermName) {
         if (sigPermName == null) return null;
+        if (!sCacheEnabled) {
+            // Cache can be used only while package changes are monitored.
+            sCacheEnabled = PkgChangeMonitor.register(ctx, sInvalidator);
+        }
+        if (sCacheEnabled) {
+            String pkgname = sCache.get(sigPermName);
+            if (pkgname != null) return pkgname;
+        }
+        int generation = sGeneration.get();
+        String pkgname = findDeclarer(ctx, sigPermName);
+        if (sCacheEnabled && pkgname != null) {
+            sCache.put(sigPermName, pkgname);
+            // Discard the package name if a package may have changed while looking it up.
+            if (sGeneration.get() != generation) sCache.remove(sigPermName, pkgname);
+        }
+        return pkgname;
+    }
+
+    private static String findDeclarer(Context ctx, String sigPermName) {
         try {
             // Get the package name of the application which declares a permission named sigPermName.
             PackageManager pm = ctx.getPackageManager();
             PermissionInfo pi;
             pi = pm.getPermissionInfo(sigPermName, PackageManager.GET_META_DATA);
             String pkgname = pi.packageName;
-
+            
             // Fail if the permission named sigPermName is not a Signature Permission
             if (pi.protectionLevel != PermissionInfo.PROTECTION_SIGNATURE) return null;
-
-            // Return the certificate hash value of the application which declares a permission named sigPermName.
-            return PkgCert.hash(ctx, pkgname);
-
+            
+            return pkgname;
+            
         } catch (NameNotFoundException e) {
             return null;
         }
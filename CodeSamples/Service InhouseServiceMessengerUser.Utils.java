@@ -1,10 +1,5 @@
 package org.jssec.android.shared;
 
-import java.util.List;
-
-import android.app.Activity;
-import android.app.ActivityManager;
-import android.app.ActivityManager.RunningAppProcessInfo;
 import android.content.Context;
 import android.content.pm.ApplicationInfo;
 import android.content.pm.PackageManager;
@@ -21,18 +16,11 @@ public class Utils {
         }
         return false;
     }
-    public static String getPackageNameFromPid(Context ctx, int pid) {
-        ActivityManager am = (ActivityManager) ctx.getSystemService(Activity.ACTIVITY_SERVICE);
-        List<RunningAppProcessInfo> processes = am.getRunningAppProcesses();
-        for (int i = 0; i < processes.size(); i++) {
-            RunningAppProcessInfo info = processes.get(i);
-            if (info.pid == pid) {
-                String[] packages = info.pkgList;
-                if (packages.length > 0) {
-                    return packages[0];
-                }
-                break;
-            }
+    // uid is the UID which the process must have (e.g. Binder.getCallingUid()).
+    public static String getPackageNameFromPid(Context ctx, int pid, int uid) {
+        String[] packages = PidPackageResolver.getPackages(ctx, pid, uid);
+        if (packages != null && packages.length > 0) {
+            return packages[0];
         }
         return null;
     }
@@ -1,5 +1,7 @@
 package org.jssec.android.service.partnerservice.aidl;
 
+import org.jssec.android.shared.CallerVerdictCache;
+import org.jssec.android.shared.LazyHolder;
 import org.jssec.android.shared.PkgCertWhitelists;
 import org.jssec.android.shared.Utils;
 
@@ -20,27 +22,52 @@ public class PartnerAIDLService extends Service {
     // The value which this service informs to client
     private int mValue = 0;
 
+    // Certificate hash values of the partner application, as binary constants: nothing is parsed at run time.
+    // Certificate hash value of  debug.keystore "androiddebugkey"
+    // 0EFB7236 328348A9 89718BAD DF57F544 D5CCB4AE B9DB34BC 1E29DD26 F77C8255
+    private static final byte[] PARTNER_DEBUG_CERT_HASH = {
+        (byte) 0x0E, (byte) 0xFB, (byte) 0x72, (byte) 0x36, (byte) 0x32, (byte) 0x83, (byte) 0x48, (byte) 0xA9,
+        (byte) 0x89, (byte) 0x71, (byte) 0x8B, (byte) 0xAD, (byte) 0xDF, (byte) 0x57, (byte) 0xF5, (byte) 0x44,
+        (byte) 0xD5, (byte) 0xCC, (byte) 0xB4, (byte) 0xAE, (byte) 0xB9, (byte) 0xDB, (byte) 0x34, (byte) 0xBC,
+        (byte) 0x1E, (byte) 0x29, (byte) 0xDD, (byte) 0x26, (byte) 0xF7, (byte) 0x7C, (byte) 0x82, (byte) 0x55
+    };
+    // Certificate hash value of keystore "partner key"
+    // 1F039BB5 7861C27A 3916C778 8E78CE00 690B3974 3EB8259F E2627B8D 4C0EC35A
+    private static final byte[] PARTNER_CERT_HASH = {
+        (byte) 0x1F, (byte) 0x03, (byte) 0x9B, (byte) 0xB5, (byte) 0x78, (byte) 0x61, (byte) 0xC2, (byte) 0x7A,
+        (byte) 0x39, (byte) 0x16, (byte) 0xC7, (byte) 0x78, (byte) 0x8E, (byte) 0x78, (byte) 0xCE, (byte) 0x00,
+        (byte) 0x69, (byte) 0x0B, (byte) 0x39, (byte) 0x74, (byte) 0x3E, (byte) 0xB8, (byte) 0x25, (byte) 0x9F,
+        (byte) 0xE2, (byte) 0x62, (byte) 0x7B, (byte) 0x8D, (byte) 0x4C, (byte) 0x0E, (byte) 0xC3, (byte) 0x5A
+    };
+
     // *** POINT 2 *** Verify that the certificate of the requesting application has been registered in the own white list.
-    private static PkgCertWhitelists sWhitelists = null;
-    private static void buildWhitelists(Context context) {
-        boolean isdebug = Utils.isDebuggable(context);
-        sWhitelists = new PkgCertWhitelists();
-
-        // Register certificate hash value of partner application "org.jssec.android.service.partnerservice.aidluser"
-        sWhitelists.add("org.jssec.android.service.partnerservice.aidluser", isdebug ?
-                // Certificate hash value of  debug.keystore "androiddebugkey"
-                "0EFB7236 328348A9 89718BAD DF57F544 D5CCB4AE B9DB34BC 1E29DD26 F77C8255" :
-                // Certificate hash value of keystore "partner key"
-                "1F039BB5 7861C27A 3916C778 8E78CE00 690B3974 3EB8259F E2627B8D 4C0EC35A");
-
-        // Register other partner applications in the same way
-    }
+    private static final LazyHolder<PkgCertWhitelists> sWhitelists = new LazyHolder<PkgCertWhitelists>() {
+        @Override
+        protected PkgCertWhitelists create(Context context) {
+            boolean isdebug = Utils.isDebuggable(context);
+            PkgCertWhitelists whitelists = new PkgCertWhitelists();
+
+            // Register certificate hash value of partner application "org.jssec.android.service.partnerservice.aidluser"
+            whitelists.add("org.jssec.android.service.partnerservice.aidluser", isdebug ? PARTNER_DEBUG_CERT_HASH : PARTNER_CERT_HASH);
 
+            // Register other partner applications in the same way
+            return whitelists;
+        }
+    };
     private static boolean checkPartner(Context context, String pkgname) {
-        if (sWhitelists == null) buildWhitelists(context);
-        return sWhitelists.test(context, pkgname);
+        return sWhitelists.get(context).test(context, pkgname);
     }
 
+    // Positive verdicts are cached per installation of the calling application for a short while,
+    // so that a series of method calls does not verify the calling application again.
+    private static final CallerVerdictCache sVerdicts = new CallerVerdictCache(10 * 1000, 32);
+    private static final CallerVerdictCache.Verifier sPartnerVerifier = new CallerVerdictCache.Verifier() {
+        @Override
+        public boolean verify(Context ctx, String pkgname) {
+            return checkPartner(ctx, pkgname);
+        }
+    };
+
     // Object to register callback
     // Methods which RemoteCallbackList provides are thread-safe.
     private final RemoteCallbackList<IPartnerAIDLServiceCallback> mCallbacks =
@@ -108,7 +135,8 @@ public class PartnerAIDLService extends Service {
     private final IPartnerAIDLService.Stub mBinder = new IPartnerAIDLService.Stub() {
         private boolean checkPartner() {
             Context ctx = PartnerAIDLService.this;
-            if (!PartnerAIDLService.checkPartner(ctx, Utils.getPackageNameFromUid(ctx, getCallingUid()))) {
+            int uid = getCallingUid();
+            if (!sVerdicts.test(ctx, uid, Utils.getPackageNameFromUid(ctx, uid), sPartnerVerifier)) {
                 mHandler.post(new Runnable(){
                     @Override
                     public void run(){
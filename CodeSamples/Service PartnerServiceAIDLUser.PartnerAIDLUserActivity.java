@@ -2,6 +2,7 @@ package org.jssec.android.service.partnerservice.aidluser;
 
 import org.jssec.android.service.partnerservice.aidl.IPartnerAIDLService;
 import org.jssec.android.service.partnerservice.aidl.IPartnerAIDLServiceCallback;
+import org.jssec.android.shared.LazyHolder;
 import org.jssec.android.shared.PkgCertWhitelists;
 import org.jssec.android.shared.Utils;
 
@@ -25,24 +26,40 @@ public class PartnerAIDLUserActivity extends Activity {
     
     private final static int MGS_VALUE_CHANGED = 1;
     
+    // Certificate hash values of the partner application, as binary constants: nothing is parsed at run time.
+    // Certificate hash value of debug.keystore "androiddebugkey"
+    // 0EFB7236 328348A9 89718BAD DF57F544 D5CCB4AE B9DB34BC 1E29DD26 F77C8255
+    private static final byte[] PARTNER_DEBUG_CERT_HASH = {
+        (byte) 0x0E, (byte) 0xFB, (byte) 0x72, (byte) 0x36, (byte) 0x32, (byte) 0x83, (byte) 0x48, (byte) 0xA9,
+        (byte) 0x89, (byte) 0x71, (byte) 0x8B, (byte) 0xAD, (byte) 0xDF, (byte) 0x57, (byte) 0xF5, (byte) 0x44,
+        (byte) 0xD5, (byte) 0xCC, (byte) 0xB4, (byte) 0xAE, (byte) 0xB9, (byte) 0xDB, (byte) 0x34, (byte) 0xBC,
+        (byte) 0x1E, (byte) 0x29, (byte) 0xDD, (byte) 0x26, (byte) 0xF7, (byte) 0x7C, (byte) 0x82, (byte) 0x55
+    };
+    // Certificate hash value of  keystore "my company key"
+    // D397D343 A5CBC10F 4EDDEB7C A10062DE 5690984F 1FB9E88B D7B3A7C2 42E142CA
+    private static final byte[] PARTNER_CERT_HASH = {
+        (byte) 0xD3, (byte) 0x97, (byte) 0xD3, (byte) 0x43, (byte) 0xA5, (byte) 0xCB, (byte) 0xC1, (byte) 0x0F,
+        (byte) 0x4E, (byte) 0xDD, (byte) 0xEB, (byte) 0x7C, (byte) 0xA1, (byte) 0x00, (byte) 0x62, (byte) 0xDE,
+        (byte) 0x56, (byte) 0x90, (byte) 0x98, (byte) 0x4F, (byte) 0x1F, (byte) 0xB9, (byte) 0xE8, (byte) 0x8B,
+        (byte) 0xD7, (byte) 0xB3, (byte) 0xA7, (byte) 0xC2, (byte) 0x42, (byte) 0xE1, (byte) 0x42, (byte) 0xCA
+    };
+
     // *** POINT 6 *** Verify if the certificate of the target application has been registered in the own white list.
-    private static PkgCertWhitelists sWhitelists = null;
-    private static void buildWhitelists(Context context) {
-        boolean isdebug = Utils.isDebuggable(context);
-        sWhitelists = new PkgCertWhitelists();
+    private static final LazyHolder<PkgCertWhitelists> sWhitelists = new LazyHolder<PkgCertWhitelists>() {
+        @Override
+        protected PkgCertWhitelists create(Context context) {
+            boolean isdebug = Utils.isDebuggable(context);
+            PkgCertWhitelists whitelists = new PkgCertWhitelists();
         
-        // Register certificate hash value of partner service application "org.jssec.android.service.partnerservice.aidl"
-        sWhitelists.add("org.jssec.android.service.partnerservice.aidl", isdebug ?
-                // Certificate hash value of debug.keystore "androiddebugkey"
-                "0EFB7236 328348A9 89718BAD DF57F544 D5CCB4AE B9DB34BC 1E29DD26 F77C8255" :
-                // Certificate hash value of  keystore "my company key"
-                "D397D343 A5CBC10F 4EDDEB7C A10062DE 5690984F 1FB9E88B D7B3A7C2 42E142CA");
+            // Register certificate hash value of partner service application "org.jssec.android.service.partnerservice.aidl"
+            whitelists.add("org.jssec.android.service.partnerservice.aidl", isdebug ? PARTNER_DEBUG_CERT_HASH : PARTNER_CERT_HASH);
         
-        // Register other partner service applications in the same way
-    }
+            // Register other partner service applications in the same way
+            return whitelists;
+        }
+    };
     private static boolean checkPartner(Context context, String pkgname) {
-        if (sWhitelists == null) buildWhitelists(context);
-        return sWhitelists.test(context, pkgname);
+        return sWhitelists.get(context).test(context, pkgname);
     }
 
     // Information about destination (requested) partner activity.
@@ -0,0 +1,189 @@
+package org.jssec.android.signasymmetrickey;
+
+import java.nio.ByteBuffer;
+import java.security.InvalidKeyException;
+import java.security.Key;
+import java.security.KeyFactory;
+import java.security.NoSuchAlgorithmException;
+import java.security.PrivateKey;
+import java.security.PublicKey;
+import java.security.Signature;
+import java.security.SignatureException;
+import java.security.interfaces.ECKey;
+import java.security.spec.InvalidKeySpecException;
+import java.security.spec.PKCS8EncodedKeySpec;
+import java.security.spec.X509EncodedKeySpec;
+
+// Signature by elliptic curve keys, with the same usage as RsaSignAsymmetricKey.
+// The algorithm is chosen by the key: ECDSA with SHA-256 for EC keys (e.g. P-256),
+// and Ed25519 for Ed25519 keys where the platform supports it.
+// Signing and key generation are much faster than RSA, while verification is slower than that of RSA.
+// Signatures are much smaller: about 72 bytes by P-256 and 64 bytes by Ed25519, vs 256 bytes by 2048 bits RSA.
+public final class EcSignAsymmetricKey {
+
+    // *** POINT 1 *** Explicitly specify the signature algorithm.
+    // *** POINT 2 *** Use strong encryption methods (specifically, technologies that meet the relevant criteria), including algorithms, block cipher modes, and padding modes.
+    // Parameters passed to the getInstance method of the Signature class
+    private static final String EC_TRANSFORMATION = "SHA256withECDSA";
+    private static final String ED25519_TRANSFORMATION = "Ed25519";
+
+    // Key algorithms
+    private static final String EC_KEY_ALGORITHM = "EC";
+    private static final String ED25519_KEY_ALGORITHM = "Ed25519";
+    // Some providers report Ed25519 keys by the generic name of the algorithm
+    private static final String EDDSA_KEY_ALGORITHM = "EdDSA";
+
+    // *** POINT 3 *** Use a key of length sufficient to guarantee the signature strength.
+    // Check the size of the curve (256 bits of EC keys are comparable to 3072 bits of RSA keys). Ed25519 always satisfies this.
+    private static final int MIN_KEY_LENGTH = 256;
+
+    // Parsed public keys are kept for reuse. Only keys which have passed the key length check are kept.
+    // Private keys are never kept: they are parsed on every call and left to the caller.
+    private static final int MAX_CACHED_KEYS = 8;
+    private static final ParsedKeyCache<PublicKey> sPublicKeys = new ParsedKeyCache<PublicKey>(MAX_CACHED_KEYS);
+
+    // Signature is not thread-safe, and getInstance() looks up the provider on every call,
+    // so each thread keeps its own instance of each algorithm and reuses it.
+    private static final ThreadLocal<Signature> sEcSignature = new ThreadLocal<Signature>();
+    private static final ThreadLocal<Signature> sEd25519Signature = new ThreadLocal<Signature>();
+
+    EcSignAsymmetricKey() {
+    }
+
+    public final byte[] sign(final byte[] plain, final byte[] keyData) {
+        // In general, signature procedures should be implemented on the server side;
+        // however, in this sample code we have implemented signature processing within the application to ensure confirmation of proper execution.
+        // When using this sample code in real-world applications, be careful not to retain any private keys within the application.
+
+        byte[] sign = null;
+
+        try {
+            PrivateKey privateKey = generatePriKey(keyData);
+            if (privateKey != null) {
+                // *** POINT 1 *** Explicitly specify the signature algorithm.
+                // *** POINT 2 *** Use strong encryption methods (specifically, technologies that meet the relevant criteria), including algorithms, block cipher modes, and padding modes.
+                Signature signature = getSignature(privateKey);
+                signature.initSign(privateKey);
+                signature.update(plain);
+
+                sign = signature.sign();
+            }
+        } catch (NoSuchAlgorithmException e) {
+        } catch (InvalidKeyException e) {
+        } catch (SignatureException e) {
+        } finally {
+        }
+
+        return sign;
+    }
+
+    public final boolean verify(final byte[] sign, final byte[] plain, final byte[] keyData) {
+
+        boolean ret = false;
+
+        try {
+            PublicKey publicKey = generatePubKey(keyData);
+            if (publicKey != null) {
+                // *** POINT 1 *** Explicitly specify the signature algorithm.
+                // *** POINT 2 *** Use strong encryption methods (specifically, technologies that meet the relevant criteria), including algorithms, block cipher modes, and padding modes.
+                Signature signature = getSignature(publicKey);
+                signature.initVerify(publicKey);
+                signature.update(plain);
+
+                ret = signature.verify(sign);
+            }
+        } catch (NoSuchAlgorithmException e) {
+        } catch (InvalidKeyException e) {
+        } catch (SignatureException e) {
+        } finally {
+        }
+
+        return ret;
+    }
+
+    // Return the Signature of this thread for the algorithm of key.
+    // Keys other than EC and Ed25519 keys are rejected by NoSuchAlgorithmException.
+    private static final Signature getSignature(final Key key) throws NoSuchAlgorithmException {
+        ThreadLocal<Signature> local;
+        String transformation;
+        if (key instanceof ECKey) {
+            local = sEcSignature;
+            transformation = EC_TRANSFORMATION;
+        } else if (isEd25519(key)) {
+            local = sEd25519Signature;
+            transformation = ED25519_TRANSFORMATION;
+        } else {
+            throw new NoSuchAlgorithmException("Unsupported key algorithm: " + key.getAlgorithm());
+        }
+
+        Signature signature = local.get();
+        if (signature == null) {
+            signature = Signature.getInstance(transformation);
+            local.set(signature);
+        }
+        return signature;
+    }
+
+    private static final boolean isEd25519(final Key key) {
+        return ED25519_KEY_ALGORITHM.equals(key.getAlgorithm()) || EDDSA_KEY_ALGORITHM.equals(key.getAlgorithm());
+    }
+
+    // *** POINT 3 *** Use a key of length sufficient to guarantee the signature strength.
+    private static final boolean isStrongEnough(final Key key) {
+        if (key instanceof ECKey) {
+            return ((ECKey) key).getParams().getCurve().getField().getFieldSize() >= MIN_KEY_LENGTH;
+        }
+        // Ed25519 always satisfies this. Keys of any other algorithm are not used.
+        return isEd25519(key);
+    }
+
+    private static final PublicKey generatePubKey(final byte[] keyData) {
+        ByteBuffer id = ParsedKeyCache.id(keyData);
+        PublicKey publicKey = sPublicKeys.get(id);
+        if (publicKey != null) return publicKey;
+
+        // Try EC first, and then Ed25519, which is not available on every platform.
+        String[] algorithms = { EC_KEY_ALGORITHM, ED25519_KEY_ALGORITHM };
+        for (String algorithm : algorithms) {
+            try {
+                KeyFactory keyFactory = KeyFactory.getInstance(algorithm);
+                publicKey = keyFactory.generatePublic(new X509EncodedKeySpec(keyData));
+                break;
+            } catch (IllegalArgumentException e) {
+            } catch (NoSuchAlgorithmException e) {
+            } catch (InvalidKeySpecException e) {
+            } finally {
+            }
+        }
+
+        if (publicKey != null && !isStrongEnough(publicKey)) {
+            publicKey = null;
+        }
+
+        sPublicKeys.put(id, publicKey);
+        return publicKey;
+    }
+
+    private static final PrivateKey generatePriKey(final byte[] keyData) {
+        PrivateKey privateKey = null;
+
+        String[] algorithms = { EC_KEY_ALGORITHM, ED25519_KEY_ALGORITHM };
+        for (String algorithm : algorithms) {
+            try {
+                KeyFactory keyFactory = KeyFactory.getInstance(algorithm);
+                privateKey = keyFactory.generatePrivate(new PKCS8EncodedKeySpec(keyData));
+                break;
+            } catch (IllegalArgumentException e) {
+            } catch (NoSuchAlgorithmException e) {
+            } catch (InvalidKeySpecException e) {
+            } finally {
+            }
+        }
+
+        if (privateKey != null && !isStrongEnough(privateKey)) {
+            privateKey = null;
+        }
+
+        return privateKey;
+    }
+}
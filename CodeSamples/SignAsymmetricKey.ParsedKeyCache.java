@@ -0,0 +1,45 @@
+package org.jssec.android.signasymmetrickey;
+
+import java.nio.ByteBuffer;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.security.PublicKey;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+// Public keys parsed by KeyFactory, kept so that repeated operations with the same key skip decoding it again.
+// Keys are identified by SHA-256 of their encoded form, and the least recently used key is dropped when full.
+// Only keys which have passed the checks of the caller (e.g. key length) are to be put.
+// Private keys can not be put, so that they are not retained beyond the operation that uses them.
+final class ParsedKeyCache<K extends PublicKey> {
+
+    private final Map<ByteBuffer, K> mKeys;
+
+    ParsedKeyCache(final int maxEntries) {
+        mKeys = new LinkedHashMap<ByteBuffer, K>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<ByteBuffer, K> eldest) {
+                return size() > maxEntries;
+            }
+        };
+    }
+
+    // Return the identifier of keyData, or null if it can not be computed (then the cache is not used).
+    static ByteBuffer id(final byte[] keyData) {
+        try {
+            return ByteBuffer.wrap(MessageDigest.getInstance("SHA-256").digest(keyData));
+        } catch (NoSuchAlgorithmException e) {
+            return null;
+        }
+    }
+
+    synchronized K get(final ByteBuffer id) {
+        if (id == null) return null;
+        return mKeys.get(id);
+    }
+
+    synchronized void put(final ByteBuffer id, final K key) {
+        if (id == null || key == null) return;
+        mKeys.put(id, key);
+    }
+}
@@ -1,5 +1,6 @@
 package org.jssec.android.signasymmetrickey;
 
+import java.nio.ByteBuffer;
 import java.security.InvalidKeyException;
 import java.security.KeyFactory;
 import java.security.NoSuchAlgorithmException;
@@ -7,10 +8,14 @@ import java.security.PrivateKey;
 import java.security.PublicKey;
 import java.security.Signature;
 import java.security.SignatureException;
+import java.security.interfaces.RSAKey;
 import java.security.interfaces.RSAPublicKey;
 import java.security.spec.InvalidKeySpecException;
 import java.security.spec.PKCS8EncodedKeySpec;
 import java.security.spec.X509EncodedKeySpec;
+import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
 
 public final class RsaSignAsymmetricKey {
 
@@ -27,6 +32,18 @@ public final class RsaSignAsymmetricKey {
     // Check the length of the key
     private static final int MIN_KEY_LENGTH = 2000;
 
+    // Parsed public keys are kept for reuse. Only keys which have passed the key length check are kept.
+    // Private keys are never kept: they are parsed on every call and left to the caller.
+    private static final int MAX_CACHED_KEYS = 8;
+    private static final ParsedKeyCache<PublicKey> sPublicKeys = new ParsedKeyCache<PublicKey>(MAX_CACHED_KEYS);
+
+    // Signature is not thread-safe, and getInstance() looks up the provider on every call,
+    // so each thread keeps its own instance and reuses it.
+    private static final ThreadLocal<Signature> sSignature = new ThreadLocal<Signature>();
+
+    // Records of a batch are verified in parallel on the common pool, split into tasks of RECORDS_PER_TASK records.
+    private static final int RECORDS_PER_TASK = 16;
+
     RsaSignAsymmetricKey() {
     }
     
@@ -40,13 +57,15 @@ public final class RsaSignAsymmetricKey {
         try {
             // *** POINT 1 *** Explicitly specify the encryption mode and the padding.
             // *** POINT 2 *** Use strong encryption methods (specifically, technologies that meet the relevant criteria), including algorithms, block cipher modes, and padding modes.
-            Signature signature = Signature.getInstance(TRANSFORMATION);
+            Signature signature = getSignature();
 
             PrivateKey privateKey = generatePriKey(keyData);
-            signature.initSign(privateKey);
-            signature.update(plain);
+            if (privateKey != null) {
+                signature.initSign(privateKey);
+                signature.update(plain);
 
-            sign = signature.sign();
+                sign = signature.sign();
+            }
         } catch (NoSuchAlgorithmException e) {
         } catch (InvalidKeyException e) {
         } catch (SignatureException e) {
@@ -57,19 +76,80 @@ public final class RsaSignAsymmetricKey {
     }
 
     public final boolean verify(final byte[] sign, final byte[] plain, final byte[] keyData) {
+        return verifyRecord(sign, plain, keyData);
+    }
+
+    // Verify signs[i] for plains[i] by the public key keyDatas[i] of all i, in parallel on all cores.
+    // Return the result of each record, or null if the arrays differ in length.
+    // A record which can not be verified (e.g. its sign is null) is false, without affecting the other records.
+    public final boolean[] verify(final byte[][] signs, final byte[][] plains, final byte[][] keyDatas) {
+        if (signs.length != plains.length || signs.length != keyDatas.length) return null;
+
+        boolean[] results = new boolean[plains.length];
+        ForkJoinPool.commonPool().invoke(new Batch(signs, plains, keyDatas, results, 0, plains.length));
+        return results;
+    }
+
+    // Verify signs[i] for plains[i] of all i by one public key, in parallel on all cores.
+    public final boolean[] verify(final byte[][] signs, final byte[][] plains, final byte[] keyData) {
+        byte[][] keyDatas = new byte[plains.length][];
+        Arrays.fill(keyDatas, keyData);
+        return verify(signs, plains, keyDatas);
+    }
+
+    private static final class Batch extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+
+        private final byte[][] mSigns;
+        private final byte[][] mPlains;
+        private final byte[][] mKeyDatas;
+        private final boolean[] mResults;
+        private final int mFrom;
+        private final int mTo;
+
+        Batch(byte[][] signs, byte[][] plains, byte[][] keyDatas, boolean[] results, int from, int to) {
+            mSigns = signs;
+            mPlains = plains;
+            mKeyDatas = keyDatas;
+            mResults = results;
+            mFrom = from;
+            mTo = to;
+        }
+
+        @Override
+        protected void compute() {
+            if (mTo - mFrom > RECORDS_PER_TASK) {
+                int mid = (mFrom + mTo) >>> 1;
+                invokeAll(new Batch(mSigns, mPlains, mKeyDatas, mResults, mFrom, mid),
+                        new Batch(mSigns, mPlains, mKeyDatas, mResults, mid, mTo));
+                return;
+            }
+            for (int i = mFrom; i < mTo; i++) {
+                try {
+                    mResults[i] = verifyRecord(mSigns[i], mPlains[i], mKeyDatas[i]);
+                } catch (RuntimeException e) {
+                    mResults[i] = false;
+                }
+            }
+        }
+    }
+
+    private static final boolean verifyRecord(final byte[] sign, final byte[] plain, final byte[] keyData) {
 
         boolean ret = false;
         
         try {
             // *** POINT 1 *** Explicitly specify the encryption mode and the padding.
             // *** POINT 2 *** Use strong encryption methods (specifically, technologies that meet the relevant criteria), including algorithms, block cipher modes, and padding modes.
-            Signature signature = Signature.getInstance(TRANSFORMATION);
+            Signature signature = getSignature();
 
             PublicKey publicKey = generatePubKey(keyData);
-            signature.initVerify(publicKey);                
-            signature.update(plain);
-            
-            ret = signature.verify(sign);
+            if (publicKey != null) {
+                signature.initVerify(publicKey);
+                signature.update(plain);
+
+                ret = signature.verify(sign);
+            }
                         
         } catch (NoSuchAlgorithmException e) {
         } catch (InvalidKeyException e) {
@@ -80,8 +160,20 @@ public final class RsaSignAsymmetricKey {
         return ret;
     }
 
+    private static final Signature getSignature() throws NoSuchAlgorithmException {
+        Signature signature = sSignature.get();
+        if (signature == null) {
+            signature = Signature.getInstance(TRANSFORMATION);
+            sSignature.set(signature);
+        }
+        return signature;
+    }
+
     private static final PublicKey generatePubKey(final byte[] keyData) {
-        PublicKey publicKey = null;
+        ByteBuffer id = ParsedKeyCache.id(keyData);
+        PublicKey publicKey = sPublicKeys.get(id);
+        if (publicKey != null) return publicKey;
+
         KeyFactory keyFactory = null;
         
         try {
@@ -102,6 +194,7 @@ public final class RsaSignAsymmetricKey {
             }
         }
 
+        sPublicKeys.put(id, publicKey);
         return publicKey;
     }
 
@@ -118,6 +211,15 @@ public final class RsaSignAsymmetricKey {
         } finally {
         }
 
+        // *** POINT 3 *** Use a key of length sufficient to guarantee the signature strength.
+        // Check the length of the key
+        if (privateKey instanceof RSAKey) {
+            int len = ((RSAKey) privateKey).getModulus().bitLength();
+            if (len < MIN_KEY_LENGTH) {
+                privateKey = null;
+            }
+        }
+
         return privateKey;
     }
 }
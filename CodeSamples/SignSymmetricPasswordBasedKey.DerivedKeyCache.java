@@ -0,0 +1,209 @@
+package org.jssec.android.signsymmetricpasswordbasedkey;
+
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.Charset;
+import java.security.InvalidKeyException;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+import javax.crypto.Mac;
+import javax.crypto.SecretKey;
+import javax.crypto.spec.SecretKeySpec;
+import javax.security.auth.DestroyFailedException;
+import javax.security.auth.Destroyable;
+
+import org.jssec.android.shared.RandomBytes;
+
+import android.content.ComponentCallbacks2;
+import android.content.Context;
+import android.content.res.Configuration;
+import android.os.Handler;
+import android.os.Looper;
+import android.os.SystemClock;
+
+// Keys derived from passwords, kept for a limited time so that repeated operations in one session
+// (e.g. reading many records after the user has entered the password once) skip the PBE derivation.
+// Entries are identified by the salt, the iteration count and an HMAC of the password under a random key
+// which exists only in memory, so neither the password nor a plain hash of it is kept.
+// The key object returned by the deriver is kept and handed out as is: a PBE key of the Bouncy Castle provider
+// also carries its PBE parameters (e.g. the IV derived from the password), which a SecretKeySpec of its key material
+// would lose, so a cached key behaves exactly as a newly derived one.
+// A key is removed when it expires (checked on every call, and by a timer scheduled for each key), is evicted,
+// or the application goes to the background. It is destroyed DESTROY_DELAY_MILLIS after its removal,
+// so that a key just handed out is not destroyed before the caller has initialized its Cipher or Mac with it.
+public final class DerivedKeyCache {
+
+    public interface Deriver {
+        // Derive the key from password and salt. password is cleared by the implementation.
+        SecretKey derive(char[] password, byte[] salt, int iterationCount);
+    }
+
+    private static final String FINGERPRINT_ALGORITHM = "HmacSHA256";
+    private static final int FINGERPRINT_KEY_BYTES = 32;
+
+    private static final long DESTROY_DELAY_MILLIS = 1000;
+
+    private static final class Entry {
+        final SecretKey key;
+        final long expiry;
+        // Time to destroy the key, set when the entry is removed from the cache
+        volatile long destroyAt = 0;
+
+        Entry(SecretKey key, long expiry) {
+            this.key = key;
+            this.expiry = expiry;
+        }
+
+        // Overwrite the key material, if the key supports it.
+        void destroy() {
+            if (key instanceof Destroyable && !((Destroyable) key).isDestroyed()) {
+                try {
+                    ((Destroyable) key).destroy();
+                } catch (DestroyFailedException e) {
+                }
+            }
+        }
+    }
+
+    private final ConcurrentHashMap<ByteBuffer, Entry> mKeys = new ConcurrentHashMap<ByteBuffer, Entry>();
+    // Entries removed from mKeys, waiting to be destroyed
+    private final ConcurrentLinkedQueue<Entry> mRemoved = new ConcurrentLinkedQueue<Entry>();
+    private final long mTtlMillis;
+    private final int mMaxEntries;
+    private final SecretKey mFingerprintKey;
+    private final Context mContext;
+    private final Handler mHandler = new Handler(Looper.getMainLooper());
+
+    private final Runnable mPurge = new Runnable() {
+        @Override
+        public void run() {
+            purge(SystemClock.elapsedRealtime());
+        }
+    };
+
+    // Key material must not stay in memory while the user is away from the application.
+    private final ComponentCallbacks2 mTrimCallback = new ComponentCallbacks2() {
+        @Override
+        public void onTrimMemory(int level) {
+            if (level >= ComponentCallbacks2.TRIM_MEMORY_UI_HIDDEN) clear();
+        }
+
+        @Override
+        public void onLowMemory() {
+            clear();
+        }
+
+        @Override
+        public void onConfigurationChanged(Configuration newConfig) {
+        }
+    };
+
+    public DerivedKeyCache(Context context, long ttlMillis, int maxEntries) {
+        mTtlMillis = ttlMillis;
+        mMaxEntries = maxEntries;
+        byte[] fingerprintKey = RandomBytes.nextBytes(FINGERPRINT_KEY_BYTES);
+        mFingerprintKey = new SecretKeySpec(fingerprintKey, FINGERPRINT_ALGORITHM);
+        Arrays.fill(fingerprintKey, (byte) 0);
+        mContext = context.getApplicationContext();
+        mContext.registerComponentCallbacks(mTrimCallback);
+    }
+
+    // Return the key for password, salt and iterationCount, deriving it by deriver only if it is not cached.
+    // password is cleared in either case.
+    public SecretKey get(final char[] password, final byte[] salt, final int iterationCount, final Deriver deriver) {
+        ByteBuffer id = fingerprint(password, salt, iterationCount);
+        if (id == null) return deriver.derive(password, salt, iterationCount);
+
+        long now = SystemClock.elapsedRealtime();
+        purge(now);
+        Entry entry = mKeys.get(id);
+        if (entry != null && now < entry.expiry) {
+            Arrays.fill(password, '?');
+            return entry.key;
+        }
+
+        SecretKey secretKey = deriver.derive(password, salt, iterationCount);
+        if (secretKey == null) return null;
+
+        // Still full of valid keys: start over rather than growing without bound.
+        if (mKeys.size() >= mMaxEntries) clear();
+        Entry previous = mKeys.put(id, new Entry(secretKey, now + mTtlMillis));
+        if (previous != null) remove(previous, now);
+        // Overwrite the key when it expires, even if the cache is not used any more.
+        mHandler.postDelayed(mPurge, mTtlMillis);
+        return secretKey;
+    }
+
+    public void clear() {
+        long now = SystemClock.elapsedRealtime();
+        Iterator<Entry> it = mKeys.values().iterator();
+        while (it.hasNext()) {
+            Entry entry = it.next();
+            it.remove();
+            remove(entry, now);
+        }
+    }
+
+    // Destroy all keys at once and stop watching the application state. The cache must not be used after this.
+    public void close() {
+        mContext.unregisterComponentCallbacks(mTrimCallback);
+        mHandler.removeCallbacks(mPurge);
+        clear();
+        Entry entry;
+        while ((entry = mRemoved.poll()) != null) {
+            entry.destroy();
+        }
+    }
+
+    // Schedule destruction of the key of entry, which has been removed from mKeys.
+    private void remove(Entry entry, long now) {
+        entry.destroyAt = now + DESTROY_DELAY_MILLIS;
+        mRemoved.add(entry);
+        mHandler.postDelayed(mPurge, DESTROY_DELAY_MILLIS);
+    }
+
+    // Remove all the expired keys, and destroy the keys removed long enough ago.
+    private void purge(long now) {
+        Iterator<Entry> it = mKeys.values().iterator();
+        while (it.hasNext()) {
+            Entry entry = it.next();
+            if (entry.expiry <= now) {
+                it.remove();
+                remove(entry, now);
+            }
+        }
+        Iterator<Entry> removed = mRemoved.iterator();
+        while (removed.hasNext()) {
+            Entry entry = removed.next();
+            if (entry.destroyAt <= now) {
+                removed.remove();
+                entry.destroy();
+            }
+        }
+    }
+
+    // HMAC of iteration count, salt and password, or null if it can not be computed.
+    private ByteBuffer fingerprint(final char[] password, final byte[] salt, final int iterationCount) {
+        ByteBuffer encodedPassword = Charset.forName("UTF-8").encode(CharBuffer.wrap(password));
+        try {
+            Mac mac = Mac.getInstance(FINGERPRINT_ALGORITHM);
+            mac.init(mFingerprintKey);
+            mac.update(ByteBuffer.allocate(4).putInt(0, iterationCount));
+            mac.update((byte) salt.length);
+            mac.update(salt);
+            mac.update(encodedPassword);
+            return ByteBuffer.wrap(mac.doFinal());
+        } catch (NoSuchAlgorithmException e) {
+        } catch (InvalidKeyException e) {
+        } finally {
+            // Clear the copy of the password
+            encodedPassword.clear();
+            while (encodedPassword.hasRemaining()) encodedPassword.put((byte) 0);
+        }
+        return null;
+    }
+}
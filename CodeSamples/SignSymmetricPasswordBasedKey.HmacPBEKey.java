@@ -1,8 +1,10 @@
 package org.jssec.android.signsymmetricpasswordbasedkey;
 
+import java.io.IOException;
+import java.io.InputStream;
 import java.security.InvalidKeyException;
+import java.security.MessageDigest;
 import java.security.NoSuchAlgorithmException;
-import java.security.SecureRandom;
 import java.security.spec.InvalidKeySpecException;
 import java.util.Arrays;
 
@@ -11,6 +13,10 @@ import javax.crypto.SecretKey;
 import javax.crypto.SecretKeyFactory;
 import javax.crypto.spec.PBEKeySpec;
 
+import org.jssec.android.shared.RandomBytes;
+
+import android.content.Context;
+
 public final class HmacPBEKey {
 
     // *** POINT 1 *** Explicitly specify the encryption mode and the padding.
@@ -27,18 +33,59 @@ public final class HmacPBEKey {
 
     // *** POINT 4 *** When generating a key from a password, specify an appropriate hash iteration count.
     // Set the number of mixing repetitions used when generating keys via PBE
+    // This is the minimum. calibrateIterationCount() gives a higher count which fits the speed of the device,
+    // and the count used for encryption is to be stored with the data.
     private static final int KEY_GEN_ITERATION_COUNT = 1024;
+    // Upper limit of the count, so that a tampered count does not make the key derivation run for minutes
+    private static final int MAX_KEY_GEN_ITERATION_COUNT = 10 * 1000 * 1000;
 
     // *** POINT 5 *** Use a key of length sufficient to guarantee the MAC strength.
     // Key length in bits
     private static final int KEY_LENGTH_BITS = 160;
 
+    // Size of the chunks in which streams are read
+    private static final int STREAM_CHUNK_BYTES = 64 * 1024;
+
+    // Derived keys kept between operations. null unless enabled by enableKeyCache().
+    private static volatile DerivedKeyCache sKeyCache = null;
+
+    private static final DerivedKeyCache.Deriver sDeriver = new DerivedKeyCache.Deriver() {
+        @Override
+        public SecretKey derive(char[] password, byte[] salt, int iterationCount) {
+            return deriveKey(password, salt, iterationCount);
+        }
+    };
+
     private byte[] mSalt = null;
+    private int mIterationCount = KEY_GEN_ITERATION_COUNT;
 
     public byte[] getSalt() {
         return mSalt;
     }
 
+    public int getIterationCount() {
+        return mIterationCount;
+    }
+
+    // Return the highest iteration count with which a key derivation takes about budgetMillis on this device.
+    // Measured on the first call and kept in a private preference file. The first call takes time: call it off the UI thread.
+    public static int calibrateIterationCount(final Context context, final long budgetMillis) {
+        return IterationCountCalibrator.get(context, KEY_GENERATOR_MODE, budgetMillis,
+                KEY_GEN_ITERATION_COUNT, MAX_KEY_GEN_ITERATION_COUNT, sDeriver);
+    }
+
+    // Keep derived keys for ttlMillis so that repeated operations with the same password and salt
+    // (e.g. reading many records after one unlock) skip the key derivation.
+    // Keys are cleared when the application goes to the background. Disabled by default.
+    public static synchronized void enableKeyCache(final Context context, final long ttlMillis, final int maxEntries) {
+        if (sKeyCache == null) sKeyCache = new DerivedKeyCache(context, ttlMillis, maxEntries);
+    }
+
+    public static synchronized void disableKeyCache() {
+        if (sKeyCache != null) sKeyCache.close();
+        sKeyCache = null;
+    }
+
     HmacPBEKey() {
         initSalt();
     }
@@ -47,27 +94,54 @@ public final class HmacPBEKey {
         mSalt = salt;
     }
 
+    // For signing with iterationCount (e.g. by calibrateIterationCount())
+    HmacPBEKey(final int iterationCount) {
+        mIterationCount = iterationCount;
+        initSalt();
+    }
+
+    // For verification with the iteration count stored with the data
+    HmacPBEKey(final byte[] salt, final int iterationCount) {
+        mSalt = salt;
+        mIterationCount = iterationCount;
+    }
+
     private void initSalt() {
         mSalt = new byte[SALT_LENGTH_BYTES];
-        SecureRandom sr = new SecureRandom();
-        sr.nextBytes(mSalt);
+        RandomBytes.nextBytes(mSalt);
     }
 
     public final byte[] sign(final byte[] plain, final char[] password) {
         return calculate(plain, password);
     }
 
-    private final byte[] calculate(final byte[] plain, final char[] password) {
+    // Calculate the MAC of the data read from in until its end.
+    public final byte[] sign(final InputStream in, final char[] password) {
         byte[] hmac = null;
 
         try {
-            // *** POINT 1 *** Explicitly specify the encryption mode and the padding.
-            // *** POINT 2 *** Use strong encryption methods (specifically, technologies that meet the relevant criteria), including algorithms, block cipher modes, and padding modes.
-            Mac mac = Mac.getInstance(TRANSFORMATION);
+            Mac mac = createMac(password);
+
+            byte[] buf = new byte[STREAM_CHUNK_BYTES];
+            int n;
+            while ((n = in.read(buf)) != -1) {
+                mac.update(buf, 0, n);
+            }
+            hmac = mac.doFinal();
+        } catch (NoSuchAlgorithmException e) {
+        } catch (InvalidKeyException e) {
+        } catch (IOException e) {
+        } finally {
+        }
 
-            // *** POINT 3 *** When generating a key from a password, use Salt.
-            SecretKey secretKey = generateKey(password, mSalt);
-            mac.init(secretKey);
+        return hmac;
+    }
+
+    private final byte[] calculate(final byte[] plain, final char[] password) {
+        byte[] hmac = null;
+
+        try {
+            Mac mac = createMac(password);
 
             hmac = mac.doFinal(plain);
         } catch (NoSuchAlgorithmException e) {
@@ -79,16 +153,66 @@ public final class HmacPBEKey {
     }
 
     public final boolean verify(final byte[] hmac, final byte[] plain, final char[] password) {
+        return matches(hmac, calculate(plain, password));
+    }
 
-        byte[] hmacForPlain = calculate(plain, password);
+    public final boolean verify(final byte[] hmac, final InputStream in, final char[] password) {
+        return matches(hmac, sign(in, password));
+    }
+
+    // Verify hmacs[i] for plains[i] of all i. The key is derived from password only once for all of them.
+    // Return the result of each pair, or null if the arrays differ in length or the key can not be generated.
+    public final boolean[] verify(final byte[][] hmacs, final byte[][] plains, final char[] password) {
+        if (hmacs.length != plains.length) return null;
+        boolean[] results = null;
+
+        try {
+            Mac mac = createMac(password);
 
-        if (Arrays.equals(hmac, hmacForPlain)) {
-            return true;
+            results = new boolean[plains.length];
+            for (int i = 0; i < plains.length; i++) {
+                results[i] = matches(hmacs[i], mac.doFinal(plains[i]));
+            }
+        } catch (NoSuchAlgorithmException e) {
+        } catch (InvalidKeyException e) {
+        } finally {
         }
-        return false;
+
+        return results;
+    }
+
+    private final Mac createMac(final char[] password) throws NoSuchAlgorithmException, InvalidKeyException {
+        // *** POINT 1 *** Explicitly specify the encryption mode and the padding.
+        // *** POINT 2 *** Use strong encryption methods (specifically, technologies that meet the relevant criteria), including algorithms, block cipher modes, and padding modes.
+        Mac mac = Mac.getInstance(TRANSFORMATION);
+
+        // *** POINT 3 *** When generating a key from a password, use Salt.
+        SecretKey secretKey = generateKey(password, mSalt, mIterationCount);
+        mac.init(secretKey);
+
+        return mac;
+    }
+
+    // Compare in constant time, so that the time taken does not tell how many leading bytes of a forged MAC are correct.
+    private static final boolean matches(final byte[] hmac, final byte[] hmacForPlain) {
+        if (hmac == null || hmacForPlain == null) return false;
+        return MessageDigest.isEqual(hmac, hmacForPlain);
     }
 
-    private static final SecretKey generateKey(final char[] password, final byte[] salt) {
+    private static final SecretKey generateKey(final char[] password, final byte[] salt, final int iterationCount) {
+        DerivedKeyCache keyCache = sKeyCache;
+        if (keyCache == null) return deriveKey(password, salt, iterationCount);
+        return keyCache.get(password, salt, iterationCount, sDeriver);
+    }
+
+    private static final SecretKey deriveKey(final char[] password, final byte[] salt, final int iterationCount) {
+        // *** POINT 4 *** When generating a key from a password, specify an appropriate hash iteration count.
+        if (iterationCount < KEY_GEN_ITERATION_COUNT || iterationCount > MAX_KEY_GEN_ITERATION_COUNT) {
+            // Clear password
+            Arrays.fill(password, '?');
+            return null;
+        }
+
         SecretKey secretKey = null;
         PBEKeySpec keySpec = null;
 
@@ -101,7 +225,7 @@ public final class HmacPBEKey {
             // *** POINT 3 *** When generating a key from a password, use Salt.
             // *** POINT 4 *** When generating a key from a password, specify an appropriate hash iteration count.
             // *** POINT 5 *** Use a key of length sufficient to guarantee the MAC strength.
-            keySpec = new PBEKeySpec(password, salt, KEY_GEN_ITERATION_COUNT, KEY_LENGTH_BITS);
+            keySpec = new PBEKeySpec(password, salt, iterationCount, KEY_LENGTH_BITS);
             // Clear password
             Arrays.fill(password, '?');
             // Generate the key
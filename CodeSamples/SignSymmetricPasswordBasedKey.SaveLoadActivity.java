@@ -1,13 +1,16 @@
 package org.jssec.android.signsymmetricpasswordbasedkey;
 
+import java.io.DataInputStream;
 import java.io.FileInputStream;
 import java.io.FileNotFoundException;
 import java.io.FileOutputStream;
 import java.io.IOException;
+import java.nio.ByteBuffer;
 
 import android.app.Activity;
 import android.content.Context;
 import android.content.Intent;
+import android.os.AsyncTask;
 import android.os.Bundle;
 import android.text.Editable;
 import android.view.View;
@@ -20,18 +23,30 @@ public class SaveLoadActivity extends Activity {
 
     private final static String filename = "plainWithHmac.dat";
 
+    // Time which key derivation from a password may take on this device. The iteration count is chosen to fit it.
+    private final static long KEY_GEN_BUDGET_MILLIS = 300;
+
+    // Files saved with the iteration count begin with this byte, followed by the count (4 bytes, big endian).
+    // This header is signed together with the data, so that it cannot be changed without being detected.
+    // Files without it (saved by older versions) begin with the salt length, and the default count is used.
+    private final static int FORMAT_WITH_ITERATION_COUNT = 0xF1;
+    private final static int HEADER_LENGTH = 1 + 4;
+
     boolean saveMode = true;
     String memo = null;
 
     class CryptData {
-        CryptData(final byte[] hmac, final byte[] salt, final byte[] data) {
+        CryptData(final byte[] hmac, final byte[] salt, final int iterationCount, final byte[] data) {
             mHmac = hmac;
             mSalt = salt;
+            mIterationCount = iterationCount;
             mData = data;
         }
 
         private byte[] mHmac = null;
         private byte[] mSalt = null;
+        // 0 if not stored in the file
+        private int mIterationCount = 0;
         private byte[] mData = null;
     }
 
@@ -54,29 +69,67 @@ public class SaveLoadActivity extends Activity {
         if (textViewPassword.getEditableText() != null) {
             char[] password = toChars(textViewPassword.getEditableText());
             clearEditableText(textViewPassword.getEditableText());
+            // Key derivation takes about KEY_GEN_BUDGET_MILLIS (and twice that while calibrating),
+            // so it is done off the UI thread, and the activity finishes when it is done.
+            view.setEnabled(false);
+            new SaveLoadTask(password).execute();
+            return;
+        }
+        finish();
+    }
+
+    private class SaveLoadTask extends AsyncTask<Void, Void, Boolean> {
+        private final char[] mPassword;
+        private CryptData mData = null;
+
+        SaveLoadTask(final char[] password) {
+            mPassword = password;
+        }
+
+        @Override
+        protected Boolean doInBackground(Void... params) {
             if (saveMode == true) {
-                HmacPBEKey cipher = new HmacPBEKey();
-                byte[] hmac = cipher.sign(memo.getBytes(), password);
-                if (hmac != null) {
-                    CryptData data = new CryptData(hmac, cipher.getSalt(), memo.getBytes());
-                    save(filename, data);
-                }
+                int iterationCount = HmacPBEKey.calibrateIterationCount(SaveLoadActivity.this, KEY_GEN_BUDGET_MILLIS);
+                HmacPBEKey cipher = new HmacPBEKey(iterationCount);
+                byte[] hmac = cipher.sign(signedBytes(cipher.getIterationCount(), memo.getBytes()), mPassword);
+                if (hmac == null) return false;
+                CryptData data = new CryptData(hmac, cipher.getSalt(), cipher.getIterationCount(), memo.getBytes());
+                return save(filename, data);
             } else {
-                CryptData data = load(filename);
-                HmacPBEKey cipher = new HmacPBEKey(data.mSalt);
-                boolean verified = cipher.verify(data.mHmac, data.mData, password);
-                Intent intent = new Intent();
+                mData = load(filename);
+                if (mData == null) return false;
+                // Always use the iteration count stored with the data
+                if (mData.mIterationCount > 0) {
+                    HmacPBEKey cipher = new HmacPBEKey(mData.mSalt, mData.mIterationCount);
+                    return cipher.verify(mData.mHmac, signedBytes(mData.mIterationCount, mData.mData), mPassword);
+                } else {
+                    HmacPBEKey cipher = new HmacPBEKey(mData.mSalt);
+                    return cipher.verify(mData.mHmac, mData.mData, mPassword);
+                }
+            }
+        }
+
+        @Override
+        protected void onPostExecute(Boolean verified) {
+            if (saveMode == false) {
                 if (verified == false) {
                     setResult(RESULT_FAILED);
                 } else {
-                    memo = new String(data.mData);
+                    memo = new String(mData.mData);
 
+                    Intent intent = new Intent();
                     intent.putExtra("memo", memo);
                     setResult(RESULT_SUCCEEDED, intent);
                 }
             }
+            finish();
         }
-        finish();
+    }
+
+    // Return the header followed by data, which is signed/verified
+    private static byte[] signedBytes(final int iterationCount, final byte[] data) {
+        return ByteBuffer.allocate(HEADER_LENGTH + data.length)
+                .put((byte) FORMAT_WITH_ITERATION_COUNT).putInt(iterationCount).put(data).array();
     }
 
     private char[] toChars(Editable editable) {
@@ -106,22 +159,33 @@ public class SaveLoadActivity extends Activity {
             byte[] salt = null;
 
             fileInput = openFileInput(name);
-
-            length = fileInput.read();
+            // Every field is read in full: a file which ends early is broken.
+            DataInputStream in = new DataInputStream(fileInput);
+
+            int headerLength = 0;
+            int iterationCount = 0;
+            length = in.readUnsignedByte();
+            if (length == FORMAT_WITH_ITERATION_COUNT) {
+                iterationCount = in.readInt();
+                if (iterationCount <= 0) return null;
+                headerLength = HEADER_LENGTH;
+                length = in.readUnsignedByte();
+            }
             salt = new byte[length];
-            fileInput.read(salt);
+            in.readFully(salt);
 
-            length = fileInput.read();
+            length = in.readUnsignedByte();
             hmac = new byte[length];
-            fileInput.read(hmac);
+            in.readFully(hmac);
 
-            long lengthPlain = fileInput.getChannel().size() - salt.length - hmac.length - 2;
+            long lengthPlain = fileInput.getChannel().size() - headerLength - salt.length - hmac.length - 2;
+            if (lengthPlain < 0 || lengthPlain > Integer.MAX_VALUE) return null;
 
             plain = new byte[(int) lengthPlain];
 
-            fileInput.read(plain);
+            in.readFully(plain);
 
-            ret = new CryptData(hmac, salt, plain);
+            ret = new CryptData(hmac, salt, iterationCount, plain);
         } catch (FileNotFoundException e) {
         } catch (IOException e) {
         } finally {
@@ -142,6 +206,8 @@ public class SaveLoadActivity extends Activity {
 
         try {
             fileOutput = openFileOutput(name, Context.MODE_PRIVATE);
+            fileOutput.write(FORMAT_WITH_ITERATION_COUNT);
+            fileOutput.write(ByteBuffer.allocate(4).putInt(data.mIterationCount).array());
             fileOutput.write(data.mSalt.length);
             fileOutput.write(data.mSalt);
             fileOutput.write(data.mHmac.length);
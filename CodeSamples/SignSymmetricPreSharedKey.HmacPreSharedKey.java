@@ -1,6 +1,10 @@
 package org.jssec.android.signsymmetricpresharedkey;
 
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
 import java.security.InvalidKeyException;
+import java.security.MessageDigest;
 import java.security.NoSuchAlgorithmException;
 import java.util.Arrays;
 
@@ -22,9 +26,52 @@ public final class HmacPreSharedKey {
     // Check the length of the key
     private static final int MIN_KEY_LENGTH_BYTES = 16;
 
+    // Size of the chunks in which streams are read
+    private static final int STREAM_CHUNK_BYTES = 64 * 1024;
+
+    // Mac is not thread-safe, and getInstance() looks up the provider on every call,
+    // so each thread keeps its own engine and reuses it.
+    // doFinal() leaves the Mac initialized with the same key, so init() is skipped while the key does not change.
+    // The engine holds the key, so call clear() on each thread which has used this class when the key is no longer needed.
+    private static final class Engine {
+        final Mac mac;
+        private byte[] mKeyData = null;
+
+        Engine(final Mac mac) {
+            this.mac = mac;
+        }
+
+        // Initialize the Mac with keyData unless it is already. Return false if keyData is not acceptable.
+        boolean init(final byte[] keyData) throws InvalidKeyException {
+            if (mKeyData != null && MessageDigest.isEqual(mKeyData, keyData)) return true;
+
+            mKeyData = null;
+            SecretKey secretKey = generateKey(keyData);
+            if (secretKey == null) return false;
+            mac.init(secretKey);
+            mKeyData = keyData.clone();
+            return true;
+        }
+
+        void clear() {
+            if (mKeyData != null) Arrays.fill(mKeyData, (byte) 0);
+            mKeyData = null;
+            mac.reset();
+        }
+    }
+
+    private static final ThreadLocal<Engine> sEngine = new ThreadLocal<Engine>();
+
     HmacPreSharedKey() {
     }
 
+    // Overwrite the copy of the key kept for the calling thread, and release its engine (and the Mac holding the key).
+    public static void clear() {
+        Engine engine = sEngine.get();
+        if (engine != null) engine.clear();
+        sEngine.remove();
+    }
+
     public final byte[] sign(final byte[] plain, final byte[] keyData) {
         return calculate(plain, keyData);
     }
@@ -35,16 +82,61 @@ public final class HmacPreSharedKey {
         try {
             // *** POINT 1 *** Explicitly specify the encryption mode and the padding.
             // *** POINT 2 *** Use strong encryption methods (specifically, technologies that meet the relevant criteria), including algorithms, block cipher modes, and padding modes.
-            Mac mac = Mac.getInstance(TRANSFORMATION);
+            Engine engine = getEngine();
 
-            SecretKey secretKey = generateKey(keyData);
-            if (secretKey != null) {
-                mac.init(secretKey);
+            if (engine.init(keyData)) {
+                hmac = engine.mac.doFinal(plain);
+            }
+        } catch (NoSuchAlgorithmException e) {
+        } catch (InvalidKeyException e) {
+        } finally {
+        }
+
+        return hmac;
+    }
+
+    // Calculate the MAC of the remaining bytes of plain without copying them.
+    public final byte[] sign(final ByteBuffer plain, final byte[] keyData) {
+        byte[] hmac = null;
+
+        try {
+            Engine engine = getEngine();
+
+            if (engine.init(keyData)) {
+                engine.mac.update(plain);
+                hmac = engine.mac.doFinal();
+            }
+        } catch (NoSuchAlgorithmException e) {
+        } catch (InvalidKeyException e) {
+        } finally {
+        }
+
+        return hmac;
+    }
 
-                hmac = mac.doFinal(plain);
+    // Calculate the MAC of the data read from in until its end.
+    public final byte[] sign(final InputStream in, final byte[] keyData) {
+        byte[] hmac = null;
+
+        try {
+            Engine engine = getEngine();
+
+            if (engine.init(keyData)) {
+                try {
+                    byte[] buf = new byte[STREAM_CHUNK_BYTES];
+                    int n;
+                    while ((n = in.read(buf)) != -1) {
+                        engine.mac.update(buf, 0, n);
+                    }
+                    hmac = engine.mac.doFinal();
+                } finally {
+                    // Discard the data given so far, so that the next use of the engine is not affected.
+                    if (hmac == null) engine.mac.reset();
+                }
             }
         } catch (NoSuchAlgorithmException e) {
         } catch (InvalidKeyException e) {
+        } catch (IOException e) {
         } finally {
         }
 
@@ -52,13 +144,53 @@ public final class HmacPreSharedKey {
     }
 
     public final boolean verify(final byte[] hmac, final byte[] plain, final byte[] keyData) {
-        byte[] hmacForPlain = calculate(plain, keyData);
+        return matches(hmac, calculate(plain, keyData));
+    }
 
-        if (hmacForPlain != null && Arrays.equals(hmac, hmacForPlain)) {
-            return true;
+    public final boolean verify(final byte[] hmac, final ByteBuffer plain, final byte[] keyData) {
+        return matches(hmac, sign(plain, keyData));
+    }
+
+    public final boolean verify(final byte[] hmac, final InputStream in, final byte[] keyData) {
+        return matches(hmac, sign(in, keyData));
+    }
+
+    // Verify hmacs[i] for plains[i] of all i under one key. The Mac is initialized only once for all of them.
+    // Return the result of each pair, or null if the arrays differ in length or keyData is not acceptable.
+    public final boolean[] verify(final byte[][] hmacs, final byte[][] plains, final byte[] keyData) {
+        if (hmacs.length != plains.length) return null;
+        boolean[] results = null;
+
+        try {
+            Engine engine = getEngine();
+
+            if (engine.init(keyData)) {
+                results = new boolean[plains.length];
+                for (int i = 0; i < plains.length; i++) {
+                    results[i] = matches(hmacs[i], engine.mac.doFinal(plains[i]));
+                }
+            }
+        } catch (NoSuchAlgorithmException e) {
+        } catch (InvalidKeyException e) {
+        } finally {
         }
 
-        return false;
+        return results;
+    }
+
+    // Compare in constant time, so that the time taken does not tell how many leading bytes of a forged MAC are correct.
+    private static final boolean matches(final byte[] hmac, final byte[] hmacForPlain) {
+        if (hmac == null || hmacForPlain == null) return false;
+        return MessageDigest.isEqual(hmac, hmacForPlain);
+    }
+
+    private static final Engine getEngine() throws NoSuchAlgorithmException {
+        Engine engine = sEngine.get();
+        if (engine == null) {
+            engine = new Engine(Mac.getInstance(TRANSFORMATION));
+            sEngine.set(engine);
+        }
+        return engine;
     }
 
     private static final SecretKey generateKey(final byte[] keyData) {
@@ -4,6 +4,9 @@ import java.security.NoSuchAlgorithmException;
 import java.security.NoSuchProviderException;
 import java.security.SecureRandom;
 
+import org.jssec.android.shared.HexCodec;
+import org.jssec.android.shared.RandomBytes;
+
 import android.os.Bundle;
 import android.app.Activity;
 import android.view.Menu;
@@ -12,6 +15,11 @@ import android.widget.TextView;
 
 public class MainActivity extends Activity {
 
+    // Instances of explicitly specified algorithms are created on first use and reused,
+    // since construction and seeding cost much more than generating 128 bytes.
+    private SecureRandom mSha1Prng = null;
+    private SecureRandom mCryptoSha1Prng = null;
+
     @Override
     protected void onCreate(Bundle savedInstanceState) {
         super.onCreate(savedInstanceState);
@@ -26,29 +34,29 @@ public class MainActivity extends Activity {
     }
     
     public void onGenerate(View view) {
-        SecureRandom random = new SecureRandom();
-
         byte[] randomBuf = new byte [128];
         
-        random.nextBytes(randomBuf);
+        // A SecureRandom of the default implementation, seeded once and kept for this thread
+        RandomBytes.nextBytes(randomBuf);
         
         // Use the random bytes to do something cryptographic such as generating salt, iv or key.
         
-        String randomHex = encodeHex(randomBuf);
+        String randomHex = HexCodec.encode(randomBuf);
         
         textToView(randomHex, R.id.textViewRandom);
     }
 
     public void onGenerate2(View view) {
         try {
-            SecureRandom random = SecureRandom.getInstance("SHA1PRNG");
+            if (mSha1Prng == null) mSha1Prng = SecureRandom.getInstance("SHA1PRNG");
+            SecureRandom random = mSha1Prng;
             byte[] randomBuf = new byte [128];
             
             random.nextBytes(randomBuf);
             
             // Use the random bytes to do something cryptographic such as generating salt, iv or key.
             
-            String randomHex = encodeHex(randomBuf);
+            String randomHex = HexCodec.encode(randomBuf);
 
             textToView(randomHex, R.id.textViewRandom);
         } catch (NoSuchAlgorithmException e) {
@@ -58,14 +66,15 @@ public class MainActivity extends Activity {
 
     public void onGenerate3(View view) {
         try {
-            SecureRandom random = SecureRandom.getInstance("SHA1PRNG", "Crypto");
+            if (mCryptoSha1Prng == null) mCryptoSha1Prng = SecureRandom.getInstance("SHA1PRNG", "Crypto");
+            SecureRandom random = mCryptoSha1Prng;
             byte[] randomBuf = new byte [128];
             
             random.nextBytes(randomBuf);
             
             // Use the random bytes to do something cryptographic such as generating salt, iv or key.
             
-            String randomHex = encodeHex(randomBuf);
+            String randomHex = HexCodec.encode(randomBuf);
             
             textToView(randomHex, R.id.textViewRandom);
         } catch (NoSuchAlgorithmException e) {
@@ -86,18 +95,4 @@ public class MainActivity extends Activity {
     {
         textToView(e.getLocalizedMessage(), viewId);
     }
-
-    private static String encodeHex(byte[] data) {
-        if (data == null)
-            return null;
-        final String digit = "0123456789ABCDEF";
-        StringBuilder sb = new StringBuilder();
-        for (byte b : data) {
-            int h = (b >> 4) & 15;
-            int l = b & 15;
-            sb.append(digit.charAt(h));
-            sb.append(digit.charAt(l));
-        }
-        return sb.toString();
-    }
 }
@@ -0,0 +1,34 @@
+#!/bin/sh
+# Build the sample sources listed in samples.txt with the stand-ins of the Android classes in stubs/,
+# and run the benchmark suites on the JVM.
+#
+# Usage: BC_JAR=/path/to/bcprov-jdk18on.jar benchmarks/run.sh [suite class ...]
+# Options for the JVM and the measurement (e.g. -Dbench.time=5000) can be given by JAVA_OPTS.
+set -e
+
+cd "$(dirname "$0")"
+: "${BC_JAR:?set BC_JAR to the jar of the Bouncy Castle provider (bcprov-jdk18on)}"
+
+BUILD=build
+rm -rf "$BUILD"
+mkdir -p "$BUILD/src" "$BUILD/classes"
+
+grep -v -e '^#' -e '^$' samples.txt | while IFS= read -r name; do
+    src="../CodeSamples/$name"
+    pkg=$(sed -n 's/^package \(.*\);.*$/\1/p' "$src" | head -n 1)
+    cls=${name%.java}
+    cls=${cls##*.}
+    dir="$BUILD/src/$(echo "$pkg" | tr . /)"
+    mkdir -p "$dir"
+    cp "$src" "$dir/$cls.java"
+done
+
+find stubs src "$BUILD/src" -name '*.java' > "$BUILD/sources.txt"
+javac -nowarn -encoding UTF-8 -cp "$BC_JAR" -d "$BUILD/classes" @"$BUILD/sources.txt"
+
+if [ $# -eq 0 ]; then
+    set -- $(grep -v -e '^#' -e '^$' suites.txt)
+fi
+for suite in "$@"; do
+    java $JAVA_OPTS -cp "$BUILD/classes:$BC_JAR" "$suite"
+done
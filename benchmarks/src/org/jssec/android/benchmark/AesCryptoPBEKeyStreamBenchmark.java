@@ -0,0 +1,72 @@
+package org.jssec.android.benchmark;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.OutputStream;
+import java.util.Random;
+
+import org.jssec.android.cryptsymmetricpasswordbasedkey.AesCryptoPBEKey;
+
+// Cost and allocation of the stream versions of AesCryptoPBEKey.encrypt/decrypt against the byte[] versions,
+// from 64 KB to 64 MB. The streams read from memory and write to a stream which discards the data,
+// so that what is allocated is that of AesCryptoPBEKey alone.
+public final class AesCryptoPBEKeyStreamBenchmark {
+
+    private static final int[] PAYLOAD_SIZES = { 64 * 1024, 1024 * 1024, 16 * 1024 * 1024, 64 * 1024 * 1024 };
+    private static final char[] PASSWORD = "benchmark password".toCharArray();
+
+    public static void main(String[] args) throws Exception {
+        Random random = new Random(1);
+
+        Bench bench = new Bench("AesCryptoPBEKey: streams vs byte[]");
+        for (int size : PAYLOAD_SIZES) {
+            final byte[] plain = new byte[size];
+            random.nextBytes(plain);
+            String suffix = ", " + CryptoBenchmark.sizeName(size);
+
+            final AesCryptoPBEKey encrypter = Bench.newSample(AesCryptoPBEKey.class);
+            final AesCryptoPBEKey decrypter = Bench.newSample(AesCryptoPBEKey.class);
+            ByteArrayOutputStream encryptedOut = new ByteArrayOutputStream(size + 16);
+            decrypter.encrypt(new ByteArrayInputStream(plain), encryptedOut, PASSWORD.clone());
+            final byte[] encrypted = encryptedOut.toByteArray();
+
+            // The password is cleared by every call
+            bench.run("encrypt(byte[])" + suffix, size, new Bench.Op() {
+                @Override
+                public Object run() {
+                    return encrypter.encrypt(plain, PASSWORD.clone());
+                }
+            });
+            bench.run("encrypt(InputStream, OutputStream)" + suffix, size, new Bench.Op() {
+                @Override
+                public Object run() {
+                    return encrypter.encrypt(new ByteArrayInputStream(plain), new DiscardingOutputStream(),
+                            PASSWORD.clone());
+                }
+            });
+            bench.run("decrypt(byte[])" + suffix, size, new Bench.Op() {
+                @Override
+                public Object run() {
+                    return decrypter.decrypt(encrypted, PASSWORD.clone());
+                }
+            });
+            bench.run("decrypt(InputStream, OutputStream)" + suffix, size, new Bench.Op() {
+                @Override
+                public Object run() {
+                    return decrypter.decrypt(new ByteArrayInputStream(encrypted), new DiscardingOutputStream(),
+                            PASSWORD.clone());
+                }
+            });
+        }
+    }
+
+    private static final class DiscardingOutputStream extends OutputStream {
+        @Override
+        public void write(int b) {
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) {
+        }
+    }
+}
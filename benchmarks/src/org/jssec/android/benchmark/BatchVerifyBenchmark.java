@@ -0,0 +1,166 @@
+package org.jssec.android.benchmark;
+
+import java.security.InvalidKeyException;
+import java.security.KeyFactory;
+import java.security.KeyPair;
+import java.security.KeyPairGenerator;
+import java.security.NoSuchAlgorithmException;
+import java.security.PublicKey;
+import java.security.Signature;
+import java.security.SignatureException;
+import java.security.interfaces.RSAPublicKey;
+import java.security.spec.InvalidKeySpecException;
+import java.security.spec.X509EncodedKeySpec;
+import java.util.Random;
+
+import org.jssec.android.signasymmetrickey.RsaSignAsymmetricKey;
+
+// Cost of verifying a sync of signed records by the batch verify of RsaSignAsymmetricKey, against a loop of
+// per-call verify, both of the current class and of the class before batch verification (copied below as it
+// was, building a Signature and a PublicKey on every call).
+// One operation verifies all the records. Records are verified on as many threads as the common
+// ForkJoinPool has, which is set by -Djava.util.concurrent.ForkJoinPool.common.parallelism=<n>.
+public final class BatchVerifyBenchmark {
+
+    private static final int RECORDS = 1000;
+    private static final int RECORD_LENGTH_BYTES = 256;
+    // Records of the sync signed by several keys, e.g. one per server
+    private static final int KEYS = 4;
+    private static final int RSA_KEY_LENGTH_BITS = 2048;
+
+    public static void main(String[] args) throws Exception {
+        Random random = new Random(1);
+        KeyPairGenerator generator = KeyPairGenerator.getInstance("RSA");
+        generator.initialize(RSA_KEY_LENGTH_BITS);
+        byte[][] publicKeys = new byte[KEYS][];
+        byte[][] privateKeys = new byte[KEYS][];
+        for (int i = 0; i < KEYS; i++) {
+            KeyPair keyPair = generator.generateKeyPair();
+            publicKeys[i] = keyPair.getPublic().getEncoded();
+            privateKeys[i] = keyPair.getPrivate().getEncoded();
+        }
+
+        final RsaSignAsymmetricKey rsa = Bench.newSample(RsaSignAsymmetricKey.class);
+        final byte[][] plains = new byte[RECORDS][];
+        final byte[][] signs = new byte[RECORDS][];
+        final byte[][] keys = new byte[RECORDS][];
+        final byte[][] oneKeySigns = new byte[RECORDS][];
+        final byte[] oneKey = publicKeys[0];
+        for (int i = 0; i < RECORDS; i++) {
+            plains[i] = new byte[RECORD_LENGTH_BYTES];
+            random.nextBytes(plains[i]);
+            keys[i] = publicKeys[i % KEYS];
+            signs[i] = rsa.sign(plains[i], privateKeys[i % KEYS]);
+            oneKeySigns[i] = rsa.sign(plains[i], privateKeys[0]);
+        }
+        long payload = (long) RECORDS * RECORD_LENGTH_BYTES;
+
+        Bench bench = new Bench("RsaSignAsymmetricKey: batch verify of " + RECORDS + " records vs per-call verify");
+        bench.run("verify(byte[][], byte[][], byte[]), one key", payload, new Bench.Op() {
+            @Override
+            public Object run() {
+                return allTrue(rsa.verify(oneKeySigns, plains, oneKey));
+            }
+        });
+        bench.run("verify(byte[], byte[], byte[]) loop, one key", payload, new Bench.Op() {
+            @Override
+            public Object run() {
+                boolean[] results = new boolean[RECORDS];
+                for (int i = 0; i < RECORDS; i++) {
+                    results[i] = rsa.verify(oneKeySigns[i], plains[i], oneKey);
+                }
+                return allTrue(results);
+            }
+        });
+        bench.run("baseline verify loop, one key", payload, new Bench.Op() {
+            @Override
+            public Object run() {
+                boolean[] results = new boolean[RECORDS];
+                for (int i = 0; i < RECORDS; i++) {
+                    results[i] = baselineVerify(oneKeySigns[i], plains[i], oneKey);
+                }
+                return allTrue(results);
+            }
+        });
+        bench.run("verify(byte[][], byte[][], byte[][]), " + KEYS + " keys", payload, new Bench.Op() {
+            @Override
+            public Object run() {
+                return allTrue(rsa.verify(signs, plains, keys));
+            }
+        });
+        bench.run("verify(byte[], byte[], byte[]) loop, " + KEYS + " keys", payload, new Bench.Op() {
+            @Override
+            public Object run() {
+                boolean[] results = new boolean[RECORDS];
+                for (int i = 0; i < RECORDS; i++) {
+                    results[i] = rsa.verify(signs[i], plains[i], keys[i]);
+                }
+                return allTrue(results);
+            }
+        });
+        bench.run("baseline verify loop, " + KEYS + " keys", payload, new Bench.Op() {
+            @Override
+            public Object run() {
+                boolean[] results = new boolean[RECORDS];
+                for (int i = 0; i < RECORDS; i++) {
+                    results[i] = baselineVerify(signs[i], plains[i], keys[i]);
+                }
+                return allTrue(results);
+            }
+        });
+    }
+
+    private static boolean allTrue(boolean[] results) {
+        if (results == null) return false;
+        for (boolean result : results) {
+            if (!result) return false;
+        }
+        return true;
+    }
+
+    // RsaSignAsymmetricKey.verify before batch verification
+    private static boolean baselineVerify(final byte[] sign, final byte[] plain, final byte[] keyData) {
+
+        boolean ret = false;
+
+        try {
+            Signature signature = Signature.getInstance("SHA256withRSA");
+
+            PublicKey publicKey = baselineGeneratePubKey(keyData);
+            signature.initVerify(publicKey);
+            signature.update(plain);
+
+            ret = signature.verify(sign);
+
+        } catch (NoSuchAlgorithmException e) {
+        } catch (InvalidKeyException e) {
+        } catch (SignatureException e) {
+        } finally {
+        }
+
+        return ret;
+    }
+
+    private static PublicKey baselineGeneratePubKey(final byte[] keyData) {
+        PublicKey publicKey = null;
+        KeyFactory keyFactory = null;
+
+        try {
+            keyFactory = KeyFactory.getInstance("RSA");
+            publicKey = keyFactory.generatePublic(new X509EncodedKeySpec(keyData));
+        } catch (IllegalArgumentException e) {
+        } catch (NoSuchAlgorithmException e) {
+        } catch (InvalidKeySpecException e) {
+        } finally {
+        }
+
+        if (publicKey instanceof RSAPublicKey) {
+            int len = ((RSAPublicKey) publicKey).getModulus().bitLength();
+            if (len < 2000) {
+                publicKey = null;
+            }
+        }
+
+        return publicKey;
+    }
+}
@@ -0,0 +1,161 @@
+package org.jssec.android.benchmark;
+
+import java.lang.management.ManagementFactory;
+import java.lang.reflect.Constructor;
+import java.security.Security;
+import java.util.Arrays;
+import java.util.Locale;
+
+import org.bouncycastle.jce.provider.BouncyCastleProvider;
+
+// Measures one operation at a time and prints one line per operation:
+//   throughput (ops/s, and MB/s if the operation has a payload),
+//   allocation per operation (bytes allocated by all threads, as by the gc profiler of JMH),
+//   latency percentiles of single operations (p50, p99, p99.9).
+// Each operation is first run for the warm-up time, so that it is measured after JIT compilation.
+// The times can be changed by -Dbench.warmup=<ms> and -Dbench.time=<ms>.
+public final class Bench {
+
+    public interface Op {
+        // Return the result of the operation, so that it is not optimized away.
+        // As in the samples, null or false means that the operation failed.
+        Object run() throws Exception;
+    }
+
+    private static final long WARM_UP_NANOS = Long.getLong("bench.warmup", 1000) * 1000000L;
+    private static final long MEASURE_NANOS = Long.getLong("bench.time", 2000) * 1000000L;
+    // Throughput is measured in batches of at least this time, so that reading the clock costs nothing.
+    private static final long BATCH_NANOS = 1000000L;
+    // Slow operations (e.g. 64 MB payloads) are still run at least this many times for the latency.
+    private static final int MIN_SAMPLES = 5;
+    private static final int MAX_SAMPLES = 1000000;
+
+    private static final com.sun.management.ThreadMXBean sThreads = threadBean();
+
+    static volatile Object sSink;
+
+    static {
+        // Stands in for the providers of Android, which include Bouncy Castle:
+        // the samples use transformations only Bouncy Castle offers (e.g. "RSA/NONE/OAEPPADDING").
+        Security.addProvider(new BouncyCastleProvider());
+    }
+
+    private final String mSuite;
+
+    public Bench(String suite) {
+        mSuite = suite;
+        System.out.println();
+        System.out.println("# " + suite);
+        System.out.println(String.format(Locale.ROOT, "%-52s %14s %10s %12s %10s %10s %10s",
+                "operation", "ops/s", "MB/s", "alloc B/op", "p50 us", "p99 us", "p99.9 us"));
+    }
+
+    public String getSuite() {
+        return mSuite;
+    }
+
+    // Create an object of a sample class by its no-argument constructor, which the samples keep
+    // package-private for the activities of the same package.
+    public static <T> T newSample(Class<T> cls) throws Exception {
+        Constructor<T> constructor = cls.getDeclaredConstructor();
+        constructor.setAccessible(true);
+        return constructor.newInstance();
+    }
+
+    // payloadBytes is the number of bytes processed by one operation, or 0 if it does not apply.
+    public void run(String name, long payloadBytes, Op op) {
+        try {
+            warmUp(op);
+            double[] throughput = measureThroughput(op);
+            long[] latencies = measureLatency(op);
+            print(name, payloadBytes, throughput[0], throughput[1], latencies);
+        } catch (Exception e) {
+            System.out.println(String.format(Locale.ROOT, "%-52s failed: %s", name, e));
+        }
+    }
+
+    private static void warmUp(Op op) throws Exception {
+        Object result = op.run();
+        if (result == null || Boolean.FALSE.equals(result)) {
+            throw new IllegalStateException("the operation returned " + result);
+        }
+        long end = System.nanoTime() + WARM_UP_NANOS;
+        do {
+            sSink = op.run();
+        } while (System.nanoTime() < end);
+    }
+
+    // Return { operations per second, bytes allocated per operation (or -1 if not available) }.
+    private static double[] measureThroughput(Op op) throws Exception {
+        long ops = 0;
+        int batch = 1;
+        long allocated = allocatedBytes();
+        long start = System.nanoTime();
+        long now = start;
+        while (now - start < MEASURE_NANOS || ops < MIN_SAMPLES) {
+            long batchStart = now;
+            for (int i = 0; i < batch; i++) {
+                sSink = op.run();
+            }
+            ops += batch;
+            now = System.nanoTime();
+            if (now - batchStart < BATCH_NANOS && batch < (1 << 20)) batch *= 2;
+        }
+        long elapsed = now - start;
+        long allocatedAfter = allocatedBytes();
+        double allocation = (allocated < 0 || allocatedAfter < 0) ? -1 : (double) (allocatedAfter - allocated) / ops;
+        return new double[] { ops * 1e9 / elapsed, allocation };
+    }
+
+    private static long[] measureLatency(Op op) throws Exception {
+        long[] samples = new long[1024];
+        int count = 0;
+        long end = System.nanoTime() + MEASURE_NANOS;
+        while ((System.nanoTime() < end || count < MIN_SAMPLES) && count < MAX_SAMPLES) {
+            long start = System.nanoTime();
+            sSink = op.run();
+            long latency = System.nanoTime() - start;
+            if (count == samples.length) samples = Arrays.copyOf(samples, count * 2);
+            samples[count++] = latency;
+        }
+        samples = Arrays.copyOf(samples, count);
+        Arrays.sort(samples);
+        return samples;
+    }
+
+    private static void print(String name, long payloadBytes, double opsPerSecond, double allocation, long[] latencies) {
+        String mbPerSecond = (payloadBytes > 0)
+                ? String.format(Locale.ROOT, "%.1f", opsPerSecond * payloadBytes / (1024 * 1024)) : "-";
+        String bytesPerOp = (allocation >= 0) ? String.format(Locale.ROOT, "%.0f", allocation) : "n/a";
+        System.out.println(String.format(Locale.ROOT, "%-52s %14.1f %10s %12s %10.2f %10.2f %10.2f",
+                name, opsPerSecond, mbPerSecond, bytesPerOp,
+                percentile(latencies, 0.50), percentile(latencies, 0.99), percentile(latencies, 0.999)));
+    }
+
+    // In microseconds
+    private static double percentile(long[] sorted, double p) {
+        int index = (int) Math.ceil(p * sorted.length) - 1;
+        return sorted[Math.max(0, Math.min(index, sorted.length - 1))] / 1000.0;
+    }
+
+    // Bytes allocated so far by all live threads (e.g. also by the workers of parallel operations),
+    // or -1 if the JVM does not tell it.
+    private static long allocatedBytes() {
+        if (sThreads == null) return -1;
+        long[] allocated = sThreads.getThreadAllocatedBytes(sThreads.getAllThreadIds());
+        long total = 0;
+        for (long bytes : allocated) {
+            if (bytes > 0) total += bytes;
+        }
+        return total;
+    }
+
+    private static com.sun.management.ThreadMXBean threadBean() {
+        java.lang.management.ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+        if (!(bean instanceof com.sun.management.ThreadMXBean)) return null;
+        com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) bean;
+        if (!threads.isThreadAllocatedMemorySupported()) return null;
+        threads.setThreadAllocatedMemoryEnabled(true);
+        return threads;
+    }
+}
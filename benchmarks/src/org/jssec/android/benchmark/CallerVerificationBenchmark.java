@@ -0,0 +1,99 @@
+package org.jssec.android.benchmark;
+
+import java.security.MessageDigest;
+import java.util.Random;
+
+import org.jssec.android.shared.HexCodec;
+import org.jssec.android.shared.PkgCert;
+import org.jssec.android.shared.PkgCertWhitelists;
+import org.jssec.android.shared.SigPerm;
+import org.jssec.android.shared.Utils;
+
+import android.content.pm.PermissionInfo;
+
+// Cost of one call of the helpers which verify the caller of a component (jSSECShared):
+// PkgCert.test/hash, SigPerm.test, PkgCertWhitelists.add/test and Utils.getPackageNameFromUid.
+// "hit" is the usual case of a repeated check; "after package change" runs the check right after the
+// broadcast of a package update, which discards what the helpers have cached about the package.
+public final class CallerVerificationBenchmark {
+
+    private static final String APP_PACKAGE = "org.jssec.android.benchmark";
+    private static final String PARTNER_PACKAGE = "org.jssec.android.partner";
+    private static final int PARTNER_UID = 10123;
+    private static final int PARTNER_PID = 4321;
+    private static final String SIG_PERMISSION = "org.jssec.android.partner.permission.MY_PERMISSION";
+    // Typical size of a DER encoded certificate
+    private static final int CERT_LENGTH_BYTES = 1400;
+
+    public static void main(String[] args) throws Exception {
+        byte[] cert = new byte[CERT_LENGTH_BYTES];
+        new Random(1).nextBytes(cert);
+        final byte[] digest = MessageDigest.getInstance("SHA-256").digest(cert);
+        // As written in the samples: upper case, in groups of 4 bytes
+        final String hash = HexCodec.encode(digest, 4);
+
+        final FakeContext ctx = new FakeContext(APP_PACKAGE)
+                .installPackage(PARTNER_PACKAGE, PARTNER_UID, PARTNER_PID, cert)
+                .declarePermission(SIG_PERMISSION, PARTNER_PACKAGE, PermissionInfo.PROTECTION_SIGNATURE);
+        final PkgCertWhitelists whitelists = new PkgCertWhitelists();
+        whitelists.add(PARTNER_PACKAGE, hash);
+
+        Bench bench = new Bench("Caller verification helpers (jSSECShared)");
+        bench.run("PkgCert.test(String hash), hit", 0, new Bench.Op() {
+            @Override
+            public Object run() {
+                return PkgCert.test(ctx, PARTNER_PACKAGE, hash);
+            }
+        });
+        bench.run("PkgCert.test(byte[] digest), hit", 0, new Bench.Op() {
+            @Override
+            public Object run() {
+                return PkgCert.test(ctx, PARTNER_PACKAGE, digest);
+            }
+        });
+        bench.run("PkgCert.test(byte[] digest), after package change", 0, new Bench.Op() {
+            @Override
+            public Object run() {
+                ctx.sendPackageReplaced(PARTNER_PACKAGE, PARTNER_UID);
+                return PkgCert.test(ctx, PARTNER_PACKAGE, digest);
+            }
+        });
+        bench.run("PkgCert.hash, hit", 0, new Bench.Op() {
+            @Override
+            public Object run() {
+                return PkgCert.hash(ctx, PARTNER_PACKAGE);
+            }
+        });
+        bench.run("SigPerm.test, hit", 0, new Bench.Op() {
+            @Override
+            public Object run() {
+                return SigPerm.test(ctx, SIG_PERMISSION, hash);
+            }
+        });
+        bench.run("SigPerm.test, after package change", 0, new Bench.Op() {
+            @Override
+            public Object run() {
+                ctx.sendPackageReplaced(PARTNER_PACKAGE, PARTNER_UID);
+                return SigPerm.test(ctx, SIG_PERMISSION, hash);
+            }
+        });
+        bench.run("PkgCertWhitelists.add(String hash)", 0, new Bench.Op() {
+            @Override
+            public Object run() {
+                return new PkgCertWhitelists().add(PARTNER_PACKAGE, hash);
+            }
+        });
+        bench.run("PkgCertWhitelists.test, hit", 0, new Bench.Op() {
+            @Override
+            public Object run() {
+                return whitelists.test(ctx, PARTNER_PACKAGE);
+            }
+        });
+        bench.run("Utils.getPackageNameFromUid", 0, new Bench.Op() {
+            @Override
+            public Object run() {
+                return Utils.getPackageNameFromUid(ctx, PARTNER_UID);
+            }
+        });
+    }
+}
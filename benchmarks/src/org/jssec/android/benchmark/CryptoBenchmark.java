@@ -0,0 +1,163 @@
+package org.jssec.android.benchmark;
+
+import java.security.KeyPair;
+import java.security.KeyPairGenerator;
+import java.util.Random;
+
+import org.jssec.android.cryptasymmetrickey.RsaCryptoAsymmetricKey;
+import org.jssec.android.cryptsymmetricpasswordbasedkey.AesCryptoPBEKey;
+import org.jssec.android.cryptsymmetricpresharedkey.AesCryptoPreSharedKey;
+import org.jssec.android.signasymmetrickey.RsaSignAsymmetricKey;
+import org.jssec.android.signsymmetricpasswordbasedkey.HmacPBEKey;
+import org.jssec.android.signsymmetricpresharedkey.HmacPreSharedKey;
+
+// Cost of encrypting, decrypting, signing and verifying payloads of 16 B to 64 MB with the classes of
+// the encryption and signature samples, as they are called by the sample applications:
+// one call per payload, with the key given as bytes (or as a password) on every call.
+// Password based keys are derived with the default iteration count on every call (the key cache is off).
+// RSA encrypts 16 B directly; larger payloads do not fit in one RSA block and are encrypted as an envelope.
+public final class CryptoBenchmark {
+
+    private static final int[] PAYLOAD_SIZES = { 16, 1024, 64 * 1024, 1024 * 1024, 64 * 1024 * 1024 };
+    // Largest payload encrypted directly by RSA with OAEP padding (2048 bit key, SHA-1)
+    private static final int RSA_MAX_PLAIN_BYTES = 214;
+    private static final int RSA_KEY_LENGTH_BITS = 2048;
+    private static final int AES_KEY_LENGTH_BYTES = 16;
+    private static final int HMAC_KEY_LENGTH_BYTES = 32;
+    private static final char[] PASSWORD = "benchmark password".toCharArray();
+
+    public static void main(String[] args) throws Exception {
+        Random random = new Random(1);
+        final byte[] aesKey = new byte[AES_KEY_LENGTH_BYTES];
+        random.nextBytes(aesKey);
+        final byte[] hmacKey = new byte[HMAC_KEY_LENGTH_BYTES];
+        random.nextBytes(hmacKey);
+        KeyPairGenerator generator = KeyPairGenerator.getInstance("RSA");
+        generator.initialize(RSA_KEY_LENGTH_BITS);
+        KeyPair keyPair = generator.generateKeyPair();
+        final byte[] publicKey = keyPair.getPublic().getEncoded();
+        final byte[] privateKey = keyPair.getPrivate().getEncoded();
+
+        Bench bench = new Bench("Encryption and signature samples");
+        for (int size : PAYLOAD_SIZES) {
+            final byte[] plain = new byte[size];
+            random.nextBytes(plain);
+            String suffix = ", " + sizeName(size);
+
+            final AesCryptoPBEKey pbeEncrypter = Bench.newSample(AesCryptoPBEKey.class);
+            final AesCryptoPBEKey pbeDecrypter = Bench.newSample(AesCryptoPBEKey.class);
+            final byte[] pbeEncrypted = pbeDecrypter.encrypt(plain, PASSWORD.clone());
+            bench.run("AesCryptoPBEKey.encrypt" + suffix, size, new Bench.Op() {
+                @Override
+                public Object run() {
+                    // The password is cleared by every call
+                    return pbeEncrypter.encrypt(plain, PASSWORD.clone());
+                }
+            });
+            bench.run("AesCryptoPBEKey.decrypt" + suffix, size, new Bench.Op() {
+                @Override
+                public Object run() {
+                    return pbeDecrypter.decrypt(pbeEncrypted, PASSWORD.clone());
+                }
+            });
+
+            final AesCryptoPreSharedKey aesEncrypter = Bench.newSample(AesCryptoPreSharedKey.class);
+            final AesCryptoPreSharedKey aesDecrypter = Bench.newSample(AesCryptoPreSharedKey.class);
+            final byte[] aesEncrypted = aesDecrypter.encrypt(aesKey, plain);
+            bench.run("AesCryptoPreSharedKey.encrypt" + suffix, size, new Bench.Op() {
+                @Override
+                public Object run() {
+                    return aesEncrypter.encrypt(aesKey, plain);
+                }
+            });
+            bench.run("AesCryptoPreSharedKey.decrypt" + suffix, size, new Bench.Op() {
+                @Override
+                public Object run() {
+                    return aesDecrypter.decrypt(aesKey, aesEncrypted);
+                }
+            });
+
+            final RsaCryptoAsymmetricKey rsa = Bench.newSample(RsaCryptoAsymmetricKey.class);
+            if (size <= RSA_MAX_PLAIN_BYTES) {
+                final byte[] rsaEncrypted = rsa.encrypt(plain, publicKey);
+                bench.run("RsaCryptoAsymmetricKey.encrypt" + suffix, size, new Bench.Op() {
+                    @Override
+                    public Object run() {
+                        return rsa.encrypt(plain, publicKey);
+                    }
+                });
+                bench.run("RsaCryptoAsymmetricKey.decrypt" + suffix, size, new Bench.Op() {
+                    @Override
+                    public Object run() {
+                        return rsa.decrypt(rsaEncrypted, privateKey);
+                    }
+                });
+            } else {
+                final byte[] envelope = rsa.encryptEnvelope(plain, publicKey);
+                bench.run("RsaCryptoAsymmetricKey.encryptEnvelope" + suffix, size, new Bench.Op() {
+                    @Override
+                    public Object run() {
+                        return rsa.encryptEnvelope(plain, publicKey);
+                    }
+                });
+                bench.run("RsaCryptoAsymmetricKey.decryptEnvelope" + suffix, size, new Bench.Op() {
+                    @Override
+                    public Object run() {
+                        return rsa.decryptEnvelope(envelope, privateKey);
+                    }
+                });
+            }
+
+            final HmacPBEKey pbeMac = Bench.newSample(HmacPBEKey.class);
+            final byte[] pbeHmac = pbeMac.sign(plain, PASSWORD.clone());
+            bench.run("HmacPBEKey.sign" + suffix, size, new Bench.Op() {
+                @Override
+                public Object run() {
+                    return pbeMac.sign(plain, PASSWORD.clone());
+                }
+            });
+            bench.run("HmacPBEKey.verify" + suffix, size, new Bench.Op() {
+                @Override
+                public Object run() {
+                    return pbeMac.verify(pbeHmac, plain, PASSWORD.clone());
+                }
+            });
+
+            final HmacPreSharedKey mac = Bench.newSample(HmacPreSharedKey.class);
+            final byte[] hmac = mac.sign(plain, hmacKey);
+            bench.run("HmacPreSharedKey.sign" + suffix, size, new Bench.Op() {
+                @Override
+                public Object run() {
+                    return mac.sign(plain, hmacKey);
+                }
+            });
+            bench.run("HmacPreSharedKey.verify" + suffix, size, new Bench.Op() {
+                @Override
+                public Object run() {
+                    return mac.verify(hmac, plain, hmacKey);
+                }
+            });
+
+            final RsaSignAsymmetricKey signer = Bench.newSample(RsaSignAsymmetricKey.class);
+            final byte[] sign = signer.sign(plain, privateKey);
+            bench.run("RsaSignAsymmetricKey.sign" + suffix, size, new Bench.Op() {
+                @Override
+                public Object run() {
+                    return signer.sign(plain, privateKey);
+                }
+            });
+            bench.run("RsaSignAsymmetricKey.verify" + suffix, size, new Bench.Op() {
+                @Override
+                public Object run() {
+                    return signer.verify(sign, plain, publicKey);
+                }
+            });
+        }
+    }
+
+    static String sizeName(int size) {
+        if (size >= 1024 * 1024) return (size / (1024 * 1024)) + " MB";
+        if (size >= 1024) return (size / 1024) + " KB";
+        return size + " B";
+    }
+}
@@ -0,0 +1,240 @@
+package org.jssec.android.benchmark;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileNotFoundException;
+import java.io.FileOutputStream;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import android.app.ActivityManager;
+import android.content.BroadcastReceiver;
+import android.content.Context;
+import android.content.Intent;
+import android.content.IntentFilter;
+import android.content.SharedPreferences;
+import android.content.pm.ApplicationInfo;
+import android.content.pm.PackageInfo;
+import android.content.pm.PackageManager;
+import android.content.pm.PermissionInfo;
+import android.content.pm.Signature;
+import android.net.Uri;
+
+// Context of an application on a device with the installed packages given by installPackage().
+// Calls to the package manager, which are IPC to the system on a device, can be given a cost
+// by -Dbench.ipcMicros=<us> (busy wait, 0 by default).
+public final class FakeContext extends Context {
+
+    private static final long IPC_NANOS = Long.getLong("bench.ipcMicros", 0) * 1000L;
+
+    private final String mPackageName;
+    private final FakePackageManager mPackageManager = new FakePackageManager();
+    private final FakeActivityManager mActivityManager = new FakeActivityManager();
+    private final CopyOnWriteArrayList<BroadcastReceiver> mReceivers = new CopyOnWriteArrayList<BroadcastReceiver>();
+    private final Map<String, FakePreferences> mPreferences = new HashMap<String, FakePreferences>();
+    private final File mFilesDir;
+
+    public FakeContext(String packageName) {
+        mPackageName = packageName;
+        mFilesDir = new File(System.getProperty("java.io.tmpdir"), "jssec-bench-" + packageName);
+        mFilesDir.mkdirs();
+    }
+
+    // Install a package signed by the certificate cert, running in the process pid.
+    public FakeContext installPackage(String packageName, int uid, int pid, byte[] cert) {
+        mPackageManager.install(packageName, uid, cert);
+        mActivityManager.start(packageName, uid, pid);
+        return this;
+    }
+
+    // Declare a permission by packageName.
+    public FakeContext declarePermission(String name, String packageName, int protectionLevel) {
+        PermissionInfo info = new PermissionInfo();
+        info.name = name;
+        info.packageName = packageName;
+        info.protectionLevel = protectionLevel;
+        mPackageManager.mPermissions.put(name, info);
+        return this;
+    }
+
+    // Deliver the broadcast sent by the system when packageName is updated.
+    public void sendPackageReplaced(String packageName, int uid) {
+        Intent intent = new Intent(Intent.ACTION_PACKAGE_REPLACED);
+        intent.setData(Uri.fromParts("package", packageName, null));
+        intent.putExtra(Intent.EXTRA_UID, uid);
+        for (BroadcastReceiver receiver : mReceivers) {
+            receiver.onReceive(this, intent);
+        }
+    }
+
+    @Override
+    public Context getApplicationContext() {
+        return this;
+    }
+
+    @Override
+    public PackageManager getPackageManager() {
+        return mPackageManager;
+    }
+
+    @Override
+    public String getPackageName() {
+        return mPackageName;
+    }
+
+    @Override
+    public Object getSystemService(String name) {
+        return ACTIVITY_SERVICE.equals(name) ? mActivityManager : null;
+    }
+
+    @Override
+    public Intent registerReceiver(BroadcastReceiver receiver, IntentFilter filter) {
+        mReceivers.add(receiver);
+        return null;
+    }
+
+    @Override
+    public void unregisterReceiver(BroadcastReceiver receiver) {
+        mReceivers.remove(receiver);
+    }
+
+    @Override
+    public synchronized SharedPreferences getSharedPreferences(String name, int mode) {
+        FakePreferences preferences = mPreferences.get(name);
+        if (preferences == null) {
+            preferences = new FakePreferences();
+            mPreferences.put(name, preferences);
+        }
+        return preferences;
+    }
+
+    @Override
+    public FileInputStream openFileInput(String name) throws FileNotFoundException {
+        return new FileInputStream(new File(mFilesDir, name));
+    }
+
+    @Override
+    public FileOutputStream openFileOutput(String name, int mode) throws FileNotFoundException {
+        return new FileOutputStream(new File(mFilesDir, name));
+    }
+
+    @Override
+    public File getFilesDir() {
+        return mFilesDir;
+    }
+
+    private static void ipc() {
+        if (IPC_NANOS <= 0) return;
+        long end = System.nanoTime() + IPC_NANOS;
+        while (System.nanoTime() < end) {
+            // busy wait
+        }
+    }
+
+    private static final class FakePackageManager extends PackageManager {
+        private final Map<String, byte[]> mCerts = new ConcurrentHashMap<String, byte[]>();
+        private final Map<String, Integer> mUids = new ConcurrentHashMap<String, Integer>();
+        private final Map<String, PermissionInfo> mPermissions = new ConcurrentHashMap<String, PermissionInfo>();
+
+        void install(String packageName, int uid, byte[] cert) {
+            mCerts.put(packageName, cert.clone());
+            mUids.put(packageName, uid);
+        }
+
+        @Override
+        public PackageInfo getPackageInfo(String packageName, int flags) throws NameNotFoundException {
+            ipc();
+            byte[] cert = mCerts.get(packageName);
+            if (cert == null) throw new NameNotFoundException(packageName);
+            PackageInfo info = new PackageInfo();
+            info.packageName = packageName;
+            // A new object for every call, as returned by IPC
+            info.signatures = new Signature[] { new Signature(cert) };
+            return info;
+        }
+
+        @Override
+        public ApplicationInfo getApplicationInfo(String packageName, int flags) throws NameNotFoundException {
+            ipc();
+            Integer uid = mUids.get(packageName);
+            if (uid == null) throw new NameNotFoundException(packageName);
+            ApplicationInfo info = new ApplicationInfo();
+            info.packageName = packageName;
+            info.uid = uid;
+            return info;
+        }
+
+        @Override
+        public PermissionInfo getPermissionInfo(String name, int flags) throws NameNotFoundException {
+            ipc();
+            PermissionInfo declared = mPermissions.get(name);
+            if (declared == null) throw new NameNotFoundException(name);
+            PermissionInfo info = new PermissionInfo();
+            info.name = declared.name;
+            info.packageName = declared.packageName;
+            info.protectionLevel = declared.protectionLevel;
+            return info;
+        }
+
+        @Override
+        public String[] getPackagesForUid(int uid) {
+            ipc();
+            List<String> packages = new ArrayList<String>();
+            for (Map.Entry<String, Integer> entry : mUids.entrySet()) {
+                if (entry.getValue() == uid) packages.add(entry.getKey());
+            }
+            return packages.isEmpty() ? null : packages.toArray(new String[packages.size()]);
+        }
+    }
+
+    private static final class FakeActivityManager extends ActivityManager {
+        private final List<RunningAppProcessInfo> mProcesses = new CopyOnWriteArrayList<RunningAppProcessInfo>();
+
+        void start(String packageName, int uid, int pid) {
+            RunningAppProcessInfo info = new RunningAppProcessInfo();
+            info.processName = packageName;
+            info.pid = pid;
+            info.uid = uid;
+            info.pkgList = new String[] { packageName };
+            mProcesses.add(info);
+        }
+
+        @Override
+        public List<RunningAppProcessInfo> getRunningAppProcesses() {
+            ipc();
+            return new ArrayList<RunningAppProcessInfo>(mProcesses);
+        }
+    }
+
+    private static final class FakePreferences implements SharedPreferences {
+        private final Map<String, Integer> mInts = new ConcurrentHashMap<String, Integer>();
+
+        @Override
+        public int getInt(String key, int defValue) {
+            Integer value = mInts.get(key);
+            return (value != null) ? value : defValue;
+        }
+
+        @Override
+        public Editor edit() {
+            return new Editor() {
+                private final Map<String, Integer> mEdits = new HashMap<String, Integer>();
+
+                @Override
+                public Editor putInt(String key, int value) {
+                    mEdits.put(key, value);
+                    return this;
+                }
+
+                @Override
+                public void apply() {
+                    mInts.putAll(mEdits);
+                }
+            };
+        }
+    }
+}
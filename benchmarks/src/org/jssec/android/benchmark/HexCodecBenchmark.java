@@ -0,0 +1,130 @@
+package org.jssec.android.benchmark;
+
+import java.nio.ByteBuffer;
+import java.util.Random;
+
+import org.jssec.android.shared.HexCodec;
+
+// Cost of HexCodec against the three hex encoders it replaced, copied below as they were:
+// PkgCert.byte2hex (String.format per byte), JSSEC CertHash Checker's byte2hex (groups of 4 bytes)
+// and UseRandom's encodeHex. Inputs are a SHA-256 digest (32 B) and a larger 1 KB block.
+public final class HexCodecBenchmark {
+
+    private static final int[] INPUT_SIZES = { 32, 1024 };
+    // As shown by CertHash Checker and written in the samples
+    private static final int GROUP = 4;
+
+    public static void main(String[] args) throws Exception {
+        Random random = new Random(1);
+
+        Bench bench = new Bench("HexCodec vs the earlier hex encoders");
+        for (int size : INPUT_SIZES) {
+            final byte[] data = new byte[size];
+            random.nextBytes(data);
+            final String hex = HexCodec.encode(data);
+            final String grouped = HexCodec.encode(data, GROUP);
+            final char[] chars = new char[HexCodec.encodedLength(size, GROUP)];
+            final ByteBuffer buffer = ByteBuffer.allocate(size);
+            String suffix = ", " + CryptoBenchmark.sizeName(size);
+
+            bench.run("HexCodec.encode" + suffix, size, new Bench.Op() {
+                @Override
+                public Object run() {
+                    return HexCodec.encode(data);
+                }
+            });
+            bench.run("baseline PkgCert.byte2hex" + suffix, size, new Bench.Op() {
+                @Override
+                public Object run() {
+                    return baselinePkgCertByte2hex(data);
+                }
+            });
+            bench.run("baseline UseRandom.encodeHex" + suffix, size, new Bench.Op() {
+                @Override
+                public Object run() {
+                    return baselineUseRandomEncodeHex(data);
+                }
+            });
+            bench.run("HexCodec.encode, grouped" + suffix, size, new Bench.Op() {
+                @Override
+                public Object run() {
+                    return HexCodec.encode(data, GROUP);
+                }
+            });
+            bench.run("baseline CertHash Checker byte2hex" + suffix, size, new Bench.Op() {
+                @Override
+                public Object run() {
+                    return baselineCertHashCheckerByte2hex(data);
+                }
+            });
+            bench.run("HexCodec.encode into char[], grouped" + suffix, size, new Bench.Op() {
+                @Override
+                public Object run() {
+                    return HexCodec.encode(data, 0, data.length, chars, 0, GROUP);
+                }
+            });
+            bench.run("HexCodec.decode, grouped" + suffix, size, new Bench.Op() {
+                @Override
+                public Object run() {
+                    return HexCodec.decode(grouped);
+                }
+            });
+            bench.run("HexCodec.decode into ByteBuffer, grouped" + suffix, size, new Bench.Op() {
+                @Override
+                public Object run() {
+                    buffer.clear();
+                    return HexCodec.decode(grouped, buffer);
+                }
+            });
+            // What the earlier PkgCert.test did to the expected hash before comparing Strings
+            bench.run("baseline replaceAll(\" \", \"\"), grouped" + suffix, size, new Bench.Op() {
+                @Override
+                public Object run() {
+                    return grouped.replaceAll(" ", "").equals(hex);
+                }
+            });
+        }
+    }
+
+    // PkgCert.byte2hex before HexCodec
+    private static String baselinePkgCertByte2hex(byte[] data) {
+        if (data == null) return null;
+        final StringBuilder hexadecimal = new StringBuilder();
+        for (final byte b : data) {
+            hexadecimal.append(String.format("%02X", b));
+        }
+        return hexadecimal.toString();
+    }
+
+    // byte2hex of JSSEC CertHash Checker before HexCodec
+    private static String baselineCertHashCheckerByte2hex(byte[] data) {
+        if (data == null) return null;
+        final String digit = "0123456789ABCDEF";
+        StringBuilder sb = new StringBuilder();
+        int i = 4;
+        for (byte b : data) {
+            if (i == 0) { sb.append(' '); i = 4; }
+            i--;
+            int h = (b >> 4) & 15;
+            int l = b & 15;
+            sb.append(digit.charAt(h));
+            sb.append(digit.charAt(l));
+        }
+        return sb.toString();
+    }
+
+    // encodeHex of UseRandom before HexCodec
+    private static String baselineUseRandomEncodeHex(byte[] data) {
+        if (data == null)
+            return null;
+        final String digit = "0123456789ABCDEF";
+        StringBuilder sb = new StringBuilder();
+        for (byte b : data) {
+            int h = (b >> 4) & 15;
+            int l = b & 15;
+            sb.append(digit.charAt(h));
+            sb.append(digit.charAt(l));
+        }
+        return sb.toString();
+    }
+}
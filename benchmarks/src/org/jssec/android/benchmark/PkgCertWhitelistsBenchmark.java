@@ -0,0 +1,151 @@
+package org.jssec.android.benchmark;
+
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+
+import org.jssec.android.shared.HexCodec;
+import org.jssec.android.shared.PkgCertWhitelists;
+
+import android.content.Context;
+import android.content.pm.PackageInfo;
+import android.content.pm.PackageManager;
+import android.content.pm.PackageManager.NameNotFoundException;
+import android.content.pm.Signature;
+
+// Cost of one PkgCertWhitelists check, against the String path it replaced: the earlier PkgCertWhitelists
+// and PkgCert, copied below as they were, which strip spaces with a regex and compare hex Strings built by
+// String.format() per byte, looking the certificate up on every check.
+// Run with -Dbench.ipcMicros=<us> to give the look-up of the certificate the cost of IPC on a device.
+public final class PkgCertWhitelistsBenchmark {
+
+    private static final String APP_PACKAGE = "org.jssec.android.benchmark";
+    private static final String PARTNER_PACKAGE = "org.jssec.android.partner";
+    private static final String UNKNOWN_PACKAGE = "org.jssec.android.unknown";
+    private static final int PARTNER_UID = 10123;
+    private static final int PARTNER_PID = 4321;
+    // Typical size of a DER encoded certificate
+    private static final int CERT_LENGTH_BYTES = 1400;
+
+    public static void main(String[] args) throws Exception {
+        byte[] cert = new byte[CERT_LENGTH_BYTES];
+        new Random(1).nextBytes(cert);
+        // As written in the samples: upper case, in groups of 4 bytes
+        final String hash = HexCodec.encode(MessageDigest.getInstance("SHA-256").digest(cert), 4);
+
+        final FakeContext ctx = new FakeContext(APP_PACKAGE)
+                .installPackage(PARTNER_PACKAGE, PARTNER_UID, PARTNER_PID, cert);
+        final PkgCertWhitelists whitelists = new PkgCertWhitelists();
+        whitelists.add(PARTNER_PACKAGE, hash);
+        final BaselinePkgCertWhitelists baseline = new BaselinePkgCertWhitelists();
+        baseline.add(PARTNER_PACKAGE, hash);
+
+        Bench bench = new Bench("PkgCertWhitelists: binary digests vs the String path");
+        bench.run("PkgCertWhitelists.add", 0, new Bench.Op() {
+            @Override
+            public Object run() {
+                return new PkgCertWhitelists().add(PARTNER_PACKAGE, hash);
+            }
+        });
+        bench.run("baseline PkgCertWhitelists.add", 0, new Bench.Op() {
+            @Override
+            public Object run() {
+                return new BaselinePkgCertWhitelists().add(PARTNER_PACKAGE, hash);
+            }
+        });
+        bench.run("PkgCertWhitelists.test, listed package", 0, new Bench.Op() {
+            @Override
+            public Object run() {
+                return whitelists.test(ctx, PARTNER_PACKAGE);
+            }
+        });
+        bench.run("baseline PkgCertWhitelists.test, listed package", 0, new Bench.Op() {
+            @Override
+            public Object run() {
+                return baseline.test(ctx, PARTNER_PACKAGE);
+            }
+        });
+        bench.run("PkgCertWhitelists.test, unlisted package", 0, new Bench.Op() {
+            @Override
+            public Object run() {
+                return !whitelists.test(ctx, UNKNOWN_PACKAGE);
+            }
+        });
+        bench.run("baseline PkgCertWhitelists.test, unlisted package", 0, new Bench.Op() {
+            @Override
+            public Object run() {
+                return !baseline.test(ctx, UNKNOWN_PACKAGE);
+            }
+        });
+    }
+
+    // PkgCertWhitelists before binary digests
+    private static final class BaselinePkgCertWhitelists {
+        private Map<String, String> mWhitelists = new HashMap<String, String>();
+
+        public boolean add(String pkgname, String sha256) {
+            if (pkgname == null) return false;
+            if (sha256 == null) return false;
+
+            sha256 = sha256.replaceAll(" ", "");
+            if (sha256.length() != 64) return false;    // SHA-256 -> 32 bytes -> 64 chars
+            sha256 = sha256.toUpperCase();
+            if (sha256.replaceAll("[0-9A-F]+", "").length() != 0) return false; // found non hex char
+
+            mWhitelists.put(pkgname, sha256);
+            return true;
+        }
+
+        public boolean test(Context ctx, String pkgname) {
+            // Get the correct hash value which corresponds to pkgname.
+            String correctHash = mWhitelists.get(pkgname);
+
+            // Compare the actual hash value of pkgname with the correct hash value.
+            return BaselinePkgCert.test(ctx, pkgname, correctHash);
+        }
+    }
+
+    // PkgCert before binary digests
+    private static final class BaselinePkgCert {
+
+        public static boolean test(Context ctx, String pkgname, String correctHash) {
+            if (correctHash == null) return false;
+            correctHash = correctHash.replaceAll(" ", "");
+            return correctHash.equals(hash(ctx, pkgname));
+        }
+
+        public static String hash(Context ctx, String pkgname) {
+            if (pkgname == null) return null;
+            try {
+                PackageManager pm = ctx.getPackageManager();
+                PackageInfo pkginfo = pm.getPackageInfo(pkgname, PackageManager.GET_SIGNATURES);
+                if (pkginfo.signatures.length != 1) return null;    // Will not handle multiple signatures.
+                Signature sig = pkginfo.signatures[0];
+                byte[] cert = sig.toByteArray();
+                byte[] sha256 = computeSha256(cert);
+                return byte2hex(sha256);
+            } catch (NameNotFoundException e) {
+                return null;
+            }
+        }
+
+        private static byte[] computeSha256(byte[] data) {
+            try {
+                return MessageDigest.getInstance("SHA-256").digest(data);
+            } catch (NoSuchAlgorithmException e) {
+                return null;
+            }
+        }
+
+        private static String byte2hex(byte[] data) {
+            if (data == null) return null;
+            final StringBuilder hexadecimal = new StringBuilder();
+            for (final byte b : data) {
+                hexadecimal.append(String.format("%02X", b));
+            }
+            return hexadecimal.toString();
+        }
+    }
+}
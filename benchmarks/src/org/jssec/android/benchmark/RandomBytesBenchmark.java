@@ -0,0 +1,80 @@
+package org.jssec.android.benchmark;
+
+import java.nio.ByteBuffer;
+import java.security.SecureRandom;
+
+import org.jssec.android.shared.RandomBytes;
+
+// Cost of RandomBytes against a new SecureRandom per call, as AesCryptoPBEKey.initSalt, HmacPBEKey.initSalt
+// and UseRandom did before, and against one SecureRandom shared by the callers.
+// Sizes are those of an IV (16 B), a salt (20 B) and a token (32 B), and a batch of IVs for 64 records.
+public final class RandomBytesBenchmark {
+
+    private static final int[] REQUEST_SIZES = { 16, 20, 32 };
+    private static final int IV_LENGTH_BYTES = 16;
+    private static final int BATCH_RECORDS = 64;
+
+    public static void main(String[] args) throws Exception {
+        final SecureRandom shared = new SecureRandom();
+
+        Bench bench = new Bench("RandomBytes vs SecureRandom");
+        for (final int size : REQUEST_SIZES) {
+            String suffix = ", " + size + " B";
+            bench.run("RandomBytes.nextBytes(int)" + suffix, size, new Bench.Op() {
+                @Override
+                public Object run() {
+                    return RandomBytes.nextBytes(size);
+                }
+            });
+            bench.run("new SecureRandom().nextBytes" + suffix, size, new Bench.Op() {
+                @Override
+                public Object run() {
+                    byte[] bytes = new byte[size];
+                    new SecureRandom().nextBytes(bytes);
+                    return bytes;
+                }
+            });
+            bench.run("shared SecureRandom.nextBytes" + suffix, size, new Bench.Op() {
+                @Override
+                public Object run() {
+                    byte[] bytes = new byte[size];
+                    shared.nextBytes(bytes);
+                    return bytes;
+                }
+            });
+        }
+
+        int batchBytes = IV_LENGTH_BYTES * BATCH_RECORDS;
+        String suffix = ", " + BATCH_RECORDS + " IVs";
+        final ByteBuffer heap = ByteBuffer.allocate(batchBytes);
+        final ByteBuffer direct = ByteBuffer.allocateDirect(batchBytes);
+        bench.run("RandomBytes.nextBytes(ByteBuffer), heap" + suffix, batchBytes, new Bench.Op() {
+            @Override
+            public Object run() {
+                heap.clear();
+                RandomBytes.nextBytes(heap);
+                return heap;
+            }
+        });
+        bench.run("RandomBytes.nextBytes(ByteBuffer), direct" + suffix, batchBytes, new Bench.Op() {
+            @Override
+            public Object run() {
+                direct.clear();
+                RandomBytes.nextBytes(direct);
+                return direct;
+            }
+        });
+        bench.run("new SecureRandom().nextBytes per IV" + suffix, batchBytes, new Bench.Op() {
+            @Override
+            public Object run() {
+                heap.clear();
+                for (int i = 0; i < BATCH_RECORDS; i++) {
+                    byte[] iv = new byte[IV_LENGTH_BYTES];
+                    new SecureRandom().nextBytes(iv);
+                    heap.put(iv);
+                }
+                return heap;
+            }
+        });
+    }
+}
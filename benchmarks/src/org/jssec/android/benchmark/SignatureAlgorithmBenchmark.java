@@ -0,0 +1,95 @@
+package org.jssec.android.benchmark;
+
+import java.security.KeyPair;
+import java.security.KeyPairGenerator;
+import java.util.Random;
+
+import org.jssec.android.signasymmetrickey.EcSignAsymmetricKey;
+import org.jssec.android.signasymmetrickey.RsaSignAsymmetricKey;
+
+// Cost of signing and verifying by EcSignAsymmetricKey (ECDSA P-256 and Ed25519) against RsaSignAsymmetricKey
+// (SHA256withRSA, 2048 bit), and the size of their signatures.
+public final class SignatureAlgorithmBenchmark {
+
+    private static final int[] MESSAGE_SIZES = { 32, 1024 };
+    private static final int RSA_KEY_LENGTH_BITS = 2048;
+    private static final int EC_KEY_LENGTH_BITS = 256;
+
+    private interface Signer {
+        byte[] sign(byte[] plain, byte[] keyData);
+
+        boolean verify(byte[] sign, byte[] plain, byte[] keyData);
+    }
+
+    public static void main(String[] args) throws Exception {
+        final RsaSignAsymmetricKey rsa = Bench.newSample(RsaSignAsymmetricKey.class);
+        final EcSignAsymmetricKey ec = Bench.newSample(EcSignAsymmetricKey.class);
+        Signer rsaSigner = new Signer() {
+            @Override
+            public byte[] sign(byte[] plain, byte[] keyData) {
+                return rsa.sign(plain, keyData);
+            }
+
+            @Override
+            public boolean verify(byte[] sign, byte[] plain, byte[] keyData) {
+                return rsa.verify(sign, plain, keyData);
+            }
+        };
+        Signer ecSigner = new Signer() {
+            @Override
+            public byte[] sign(byte[] plain, byte[] keyData) {
+                return ec.sign(plain, keyData);
+            }
+
+            @Override
+            public boolean verify(byte[] sign, byte[] plain, byte[] keyData) {
+                return ec.verify(sign, plain, keyData);
+            }
+        };
+
+        String[] names = { "RsaSignAsymmetricKey, RSA 2048", "EcSignAsymmetricKey, P-256", "EcSignAsymmetricKey, Ed25519" };
+        Signer[] signers = { rsaSigner, ecSigner, ecSigner };
+        KeyPair[] keyPairs = { generateKeyPair("RSA", RSA_KEY_LENGTH_BITS), generateKeyPair("EC", EC_KEY_LENGTH_BITS),
+                generateKeyPair("Ed25519", 0) };
+        StringBuilder sizes = new StringBuilder("signature size:");
+
+        Random random = new Random(1);
+        Bench bench = new Bench("EcSignAsymmetricKey vs RsaSignAsymmetricKey");
+        for (int size : MESSAGE_SIZES) {
+            final byte[] plain = new byte[size];
+            random.nextBytes(plain);
+            for (int i = 0; i < signers.length; i++) {
+                final Signer signer = signers[i];
+                final byte[] privateKey = keyPairs[i].getPrivate().getEncoded();
+                final byte[] publicKey = keyPairs[i].getPublic().getEncoded();
+                final byte[] sign = signer.sign(plain, privateKey);
+                String suffix = ", " + CryptoBenchmark.sizeName(size);
+
+                bench.run(names[i] + ", sign" + suffix, size, new Bench.Op() {
+                    @Override
+                    public Object run() {
+                        return signer.sign(plain, privateKey);
+                    }
+                });
+                bench.run(names[i] + ", verify" + suffix, size, new Bench.Op() {
+                    @Override
+                    public Object run() {
+                        return signer.verify(sign, plain, publicKey);
+                    }
+                });
+                if (size == MESSAGE_SIZES[0]) {
+                    sizes.append(' ').append(names[i]).append(" = ")
+                            .append(sign != null ? sign.length + " B" : "failed").append(';');
+                }
+            }
+        }
+        System.out.println(sizes);
+    }
+
+    // keyLengthBits is ignored if it is 0
+    private static KeyPair generateKeyPair(String algorithm, int keyLengthBits) throws Exception {
+        KeyPairGenerator generator = KeyPairGenerator.getInstance(algorithm);
+        if (keyLengthBits > 0) generator.initialize(keyLengthBits);
+        return generator.generateKeyPair();
+    }
+}
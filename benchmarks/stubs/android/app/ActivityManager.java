@@ -0,0 +1,14 @@
+package android.app;
+
+import java.util.List;
+
+public abstract class ActivityManager {
+    public static class RunningAppProcessInfo {
+        public String processName;
+        public int pid;
+        public int uid;
+        public String[] pkgList;
+    }
+
+    public abstract List<RunningAppProcessInfo> getRunningAppProcesses();
+}
@@ -0,0 +1,40 @@
+package android.content;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileNotFoundException;
+import java.io.FileOutputStream;
+
+import android.content.pm.PackageManager;
+
+// Only the part of android.content.Context used by the benchmarked samples.
+public abstract class Context {
+    public static final int MODE_PRIVATE = 0;
+    public static final String ACTIVITY_SERVICE = "activity";
+
+    public abstract Context getApplicationContext();
+
+    public abstract PackageManager getPackageManager();
+
+    public abstract String getPackageName();
+
+    public abstract Object getSystemService(String name);
+
+    public abstract Intent registerReceiver(BroadcastReceiver receiver, IntentFilter filter);
+
+    public abstract void unregisterReceiver(BroadcastReceiver receiver);
+
+    public abstract SharedPreferences getSharedPreferences(String name, int mode);
+
+    public abstract FileInputStream openFileInput(String name) throws FileNotFoundException;
+
+    public abstract FileOutputStream openFileOutput(String name, int mode) throws FileNotFoundException;
+
+    public abstract File getFilesDir();
+
+    public void registerComponentCallbacks(ComponentCallbacks callback) {
+    }
+
+    public void unregisterComponentCallbacks(ComponentCallbacks callback) {
+    }
+}
@@ -0,0 +1,46 @@
+package android.content;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import android.net.Uri;
+
+public class Intent {
+    public static final String ACTION_PACKAGE_ADDED = "android.intent.action.PACKAGE_ADDED";
+    public static final String ACTION_PACKAGE_REPLACED = "android.intent.action.PACKAGE_REPLACED";
+    public static final String ACTION_PACKAGE_CHANGED = "android.intent.action.PACKAGE_CHANGED";
+    public static final String ACTION_PACKAGE_REMOVED = "android.intent.action.PACKAGE_REMOVED";
+    public static final String ACTION_PACKAGE_FULLY_REMOVED = "android.intent.action.PACKAGE_FULLY_REMOVED";
+    public static final String EXTRA_UID = "android.intent.extra.UID";
+
+    private final String mAction;
+    private Uri mData;
+    private final Map<String, Integer> mIntExtras = new HashMap<String, Integer>();
+
+    public Intent(String action) {
+        mAction = action;
+    }
+
+    public String getAction() {
+        return mAction;
+    }
+
+    public Intent setData(Uri data) {
+        mData = data;
+        return this;
+    }
+
+    public Uri getData() {
+        return mData;
+    }
+
+    public Intent putExtra(String name, int value) {
+        mIntExtras.put(name, value);
+        return this;
+    }
+
+    public int getIntExtra(String name, int defaultValue) {
+        Integer value = mIntExtras.get(name);
+        return (value != null) ? value : defaultValue;
+    }
+}
@@ -0,0 +1,19 @@
+package android.content;
+
+import java.util.ArrayList;
+import java.util.List;
+
+public class IntentFilter {
+    private final List<String> mActions = new ArrayList<String>();
+
+    public void addAction(String action) {
+        mActions.add(action);
+    }
+
+    public void addDataScheme(String scheme) {
+    }
+
+    public boolean hasAction(String action) {
+        return mActions.contains(action);
+    }
+}
@@ -0,0 +1,13 @@
+package android.content;
+
+public interface SharedPreferences {
+    int getInt(String key, int defValue);
+
+    Editor edit();
+
+    interface Editor {
+        Editor putInt(String key, int value);
+
+        void apply();
+    }
+}
@@ -0,0 +1,9 @@
+package android.content.pm;
+
+public class ApplicationInfo {
+    public static final int FLAG_DEBUGGABLE = 1 << 1;
+
+    public String packageName;
+    public int flags;
+    public int uid;
+}
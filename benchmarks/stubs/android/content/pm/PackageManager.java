@@ -0,0 +1,22 @@
+package android.content.pm;
+
+public abstract class PackageManager {
+    public static final int GET_META_DATA = 0x80;
+    public static final int GET_SIGNATURES = 0x40;
+
+    public static class NameNotFoundException extends Exception {
+        private static final long serialVersionUID = 1L;
+
+        public NameNotFoundException(String name) {
+            super(name);
+        }
+    }
+
+    public abstract PackageInfo getPackageInfo(String packageName, int flags) throws NameNotFoundException;
+
+    public abstract ApplicationInfo getApplicationInfo(String packageName, int flags) throws NameNotFoundException;
+
+    public abstract PermissionInfo getPermissionInfo(String name, int flags) throws NameNotFoundException;
+
+    public abstract String[] getPackagesForUid(int uid);
+}
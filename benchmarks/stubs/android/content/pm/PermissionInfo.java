@@ -0,0 +1,10 @@
+package android.content.pm;
+
+public class PermissionInfo {
+    public static final int PROTECTION_NORMAL = 0;
+    public static final int PROTECTION_SIGNATURE = 2;
+
+    public String name;
+    public String packageName;
+    public int protectionLevel;
+}
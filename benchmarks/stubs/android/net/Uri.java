@@ -0,0 +1,23 @@
+package android.net;
+
+public class Uri {
+    private final String mScheme;
+    private final String mSchemeSpecificPart;
+
+    private Uri(String scheme, String ssp) {
+        mScheme = scheme;
+        mSchemeSpecificPart = ssp;
+    }
+
+    public static Uri fromParts(String scheme, String ssp, String fragment) {
+        return new Uri(scheme, ssp);
+    }
+
+    public String getScheme() {
+        return mScheme;
+    }
+
+    public String getSchemeSpecificPart() {
+        return mSchemeSpecificPart;
+    }
+}
@@ -0,0 +1,47 @@
+package android.os;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+// Runs the posted Runnables on one daemon thread, standing in for the main thread of the application.
+public class Handler {
+    private static final ScheduledExecutorService sLooperThread = Executors.newSingleThreadScheduledExecutor(
+            new ThreadFactory() {
+                @Override
+                public Thread newThread(Runnable r) {
+                    Thread thread = new Thread(r, "main");
+                    thread.setDaemon(true);
+                    return thread;
+                }
+            });
+
+    private final Map<Runnable, ScheduledFuture<?>> mPending = new ConcurrentHashMap<Runnable, ScheduledFuture<?>>();
+
+    public Handler(Looper looper) {
+    }
+
+    public final boolean post(Runnable r) {
+        return postDelayed(r, 0);
+    }
+
+    public final boolean postDelayed(final Runnable r, long delayMillis) {
+        mPending.put(r, sLooperThread.schedule(new Runnable() {
+            @Override
+            public void run() {
+                mPending.remove(r);
+                r.run();
+            }
+        }, delayMillis, TimeUnit.MILLISECONDS));
+        return true;
+    }
+
+    public final void removeCallbacks(Runnable r) {
+        ScheduledFuture<?> future = mPending.remove(r);
+        if (future != null) future.cancel(false);
+    }
+}
@@ -0,0 +1,12 @@
+package android.os;
+
+public final class Looper {
+    private static final Looper sMainLooper = new Looper();
+
+    private Looper() {
+    }
+
+    public static Looper getMainLooper() {
+        return sMainLooper;
+    }
+}